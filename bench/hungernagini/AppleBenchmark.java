@@ -0,0 +1,42 @@
+/*
+ * Benchmarks for apple spawning in the "Hunger Nagini" game.
+ */
+package hungernagini;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures Apple.newApple while the snake covers a given share of the board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AppleBenchmark {
+
+    @Param({"32", "256", "1024"})
+    int boardSize; // Board width and height in cells
+
+    @Param({"0.1", "0.5", "0.9", "0.99"})
+    double fill; // Share of the board covered by the snake
+
+    private Apple apple;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Snake snake = new Snake(boardSize, boardSize);
+        BenchSupport.grow(snake, BenchSupport.cycle(boardSize, boardSize),
+                (int) (boardSize * boardSize * fill));
+        apple = new Apple(snake, new Random(42));
+    }
+
+    @Benchmark
+    public int newApple() {
+        apple.newApple();
+        return apple.getCell();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The BenchSupport class builds game states for the "Hunger Nagini" benchmarks.
+ */
+package hungernagini;
+
+/**
+ * BenchSupport lays a snake of a given length on a Hamiltonian cycle of the
+ * board, so a benchmark can keep moving it forever without a crash.
+ */
+final class BenchSupport {
+
+    private BenchSupport() {
+    }
+
+    /**
+     * Builds the directions of a cycle through every cell of a board with an
+     * even number of rows: right along row 0, zig-zag down through columns
+     * 1 and up, then back up column 0.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells, must be even
+     * @return the direction to take from every cell, indexed by cell
+     */
+    static char[] cycle(int columns, int rows) {
+        char[] directions = new char[columns * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                char direction;
+                if (y == 0) {
+                    direction = x == columns - 1 ? 'D' : 'R';
+                } else if (x == 0) {
+                    direction = 'U';
+                } else if (y % 2 == 1) {
+                    direction = x == 1 ? (y == rows - 1 ? 'L' : 'D') : 'L';
+                } else {
+                    direction = x == columns - 1 ? 'D' : 'R';
+                }
+                directions[y * columns + x] = direction;
+            }
+        }
+        return directions;
+    }
+
+    /**
+     * Grows a fresh snake to the given length along the cycle.
+     *
+     * @param snake a snake of length 1 at cell 0
+     * @param cycle the directions returned by cycle()
+     * @param length the length to reach, less than the number of cells
+     */
+    static void grow(Snake snake, char[] cycle, int length) {
+        while (snake.body.size() < length) {
+            snake.grow();
+            advance(snake, cycle);
+        }
+    }
+
+    /**
+     * Moves a snake one step along the cycle.
+     *
+     * @param snake the snake to move
+     * @param cycle the directions returned by cycle()
+     */
+    static void advance(Snake snake, char[] cycle) {
+        snake.turn(cycle[snake.body.headCell()]);
+        snake.move();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Benchmarks for painting a frame of the "Hunger Nagini" game.
+ */
+package hungernagini;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures Main.paintComponent and Snake.draw into an offscreen image for
+ * several board sizes and snake lengths. Run with -prof gc to see the
+ * allocation rate of a frame. The game is shown without a loop or a
+ * replay, and the panel's score file is kept under build/bench, so a run
+ * leaves the player's files alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true",
+        "-Dhungernagini.scoreFile=build/bench/scores.log",
+        "-Dhungernagini.saveFile=build/bench/checkpoint.hns",
+        "-Dhungernagini.replayDir=build/bench/replays"})
+@State(Scope.Thread)
+public class PaintBenchmark {
+
+    @Param({"32", "256"})
+    int boardSize; // Board width and height in cells, the screen shows 32x24 of them
+
+    @Param({"1", "100", "700"})
+    int length; // Snake length in segments
+
+    private Main main;
+    private Snake snake;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        main = new Main();
+        main.setSize(Main.SCREEN_WIDTH, Main.SCREEN_HEIGHT);
+        main.engine = new GameEngine(boardSize, boardSize, 1);
+        snake = main.engine.getSnake();
+        BenchSupport.grow(snake, BenchSupport.cycle(boardSize, boardSize), length);
+        main.showGame(); // The benchmark owns the game, no loop ticks it
+
+        image = new BufferedImage(Main.SCREEN_WIDTH, Main.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent() {
+        main.paintComponent(g);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage drawSnake() {
+        snake.draw(g);
+        return image;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Benchmarks for the per-tick work of the snake in the "Hunger Nagini" game.
+ */
+package hungernagini;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures Snake.move and Snake.checkCollisions for several board sizes and
+ * snake lengths. The snake follows a cycle through every cell, so it never
+ * crashes while being measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnakeBenchmark {
+
+    @Param({"32", "256", "1024"})
+    int boardSize; // Board width and height in cells
+
+    @Param({"16", "256", "1000"})
+    int length; // Snake length in segments
+
+    private Snake snake;
+    private char[] cycle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snake = new Snake(boardSize, boardSize);
+        cycle = BenchSupport.cycle(boardSize, boardSize);
+        BenchSupport.grow(snake, cycle, length);
+    }
+
+    @Benchmark
+    public int move() {
+        BenchSupport.advance(snake, cycle);
+        return snake.body.headCell();
+    }
+
+    @Benchmark
+    public boolean moveAndCheckCollisions() {
+        BenchSupport.advance(snake, cycle);
+        return snake.checkCollisions();
+    }
+
+    @Benchmark
+    public boolean checkCollisions() {
+        return snake.checkCollisions();
+    }
+}
@@ -7,7 +7,6 @@
 package hungernagini;
 
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.Random;
 
 /**
@@ -18,48 +17,80 @@ public class Apple {
 
     private int x; // x-coordinate of the apple on the map
     private int y; // y-coordinate of the apple on the map
+    private int cell; // Packed cell index of the apple, see SnakeBody
     private Snake snake; // Reference to the Snake object, used to avoid apple spawning on snake
-    private Random random = new Random(); // Random object to generate random coordinates
+    private final Random random; // Random object to generate random coordinates
+    private boolean boardFull; // Set when there is no free cell left for the apple
 
     /**
      * Constructor that takes a Snake object to avoid overlap.
      * Calls newApple() to generate the initial position of the apple.
      */
     public Apple(Snake snake) {
+        this(snake, new Random());
+    }
+
+    /**
+     * Constructor that takes the random source used to place the apple, so a
+     * game can be replayed from its seed.
+     */
+    public Apple(Snake snake, Random random) {
         this.snake = snake;
+        this.random = random;
         newApple(); // Generate the apple's initial position
     }
 
     /**
      * Generates a new position for the apple, ensuring it doesn't overlap with the snake.
-     * Loops until a position not on the snake is found.
+     * The position is one random pick from the free cells of the board, see
+     * OccupancyGrid.randomFreeCell.
+     *
+     * @return true if the apple was placed, false if the snake covers the whole board
+     */
+    public boolean newApple() {
+        int free = snake.grid.randomFreeCell(random);
+        if (free < 0) {
+            boardFull = true; // No free cell left, the player has won
+            return false;
+        }
+
+        cell = free;
+        int columns = snake.grid.getColumns();
+        x = cell % columns * Map.UNIT_SIZE;
+        y = cell / columns * Map.UNIT_SIZE;
+        return true;
+    }
+
+    /**
+     * Puts the apple on a given cell, or takes it off the board. Used when a
+     * snapshot is restored.
+     *
+     * @param cell the packed cell index of the apple
+     * @param boardFull true if there was no free cell for the apple
      */
-    public void newApple() {
-        boolean appleOnSnake;
-        
-        do {
-            // Randomly generate x and y coordinates, ensuring they fall within screen limits
-            x = random.nextInt(Main.SCREEN_WIDTH / Map.UNIT_SIZE - 1) * Map.UNIT_SIZE;
-            y = random.nextInt(Main.SCREEN_HEIGHT / Map.UNIT_SIZE - 1) * Map.UNIT_SIZE;
-            
-            // Check if the generated position is on the snake
-            appleOnSnake = !checkAppleCordinate(snake.body);
-        } while (appleOnSnake); // Repeat if the apple is on the snake
+    void place(int cell, boolean boardFull) {
+        int columns = snake.grid.getColumns();
+        this.cell = cell;
+        this.boardFull = boardFull;
+        x = cell % columns * Map.UNIT_SIZE;
+        y = cell / columns * Map.UNIT_SIZE;
+    }
+
+    /**
+     * @return true if the last call to newApple() found no free cell
+     */
+    public boolean isBoardFull() {
+        return boardFull;
     }
 
     /**
      * Checks if the apple's coordinates overlap with any segment of the snake.
-     * @param list the list of snake segments to check against
+     * @param grid the cells covered by the snake
      * @return true if the apple's coordinates are not on the snake, false otherwise
      */
-    public boolean checkAppleCordinate(ArrayList<SnakeCoordinate> list) {
-        for (SnakeCoordinate point : list) {
-            // Return false if apple's coordinates overlap with any snake segment
-            if (point.getX() == x && point.getY() == y) {
-                return false;
-            }
-        }
-        return true;
+    public boolean checkAppleCordinate(OccupancyGrid grid) {
+        // A single lookup of the apple's cell in the snake's occupancy grid
+        return !grid.isOccupied(grid.cellOf(x / Map.UNIT_SIZE, y / Map.UNIT_SIZE));
     }
 
     /**
@@ -67,6 +98,9 @@ public class Apple {
      * @param g the Graphics object used to draw the apple
      */
     public void draw(Graphics g) {
+        if (boardFull) {
+            return; // Nothing left to eat
+        }
         g.setColor(Color.RED); // Set color to red
         g.fillOval(x, y, Map.UNIT_SIZE, Map.UNIT_SIZE); // Draw the apple as a filled oval
     }
@@ -86,4 +120,12 @@ public class Apple {
     public int getY() {
         return y;
     }
+
+    /**
+     * Getter for the packed cell index of the apple.
+     * @return the cell index
+     */
+    public int getCell() {
+        return cell;
+    }
 }
@@ -0,0 +1,316 @@
+/*
+ * The Arena class runs a "Hunger Nagini" board shared by many snakes and apples.
+ * All the snakes move at once every tick, and collisions between them are found through
+ * the board's occupancy grid rather than by comparing bodies.
+ */
+package hungernagini;
+
+import java.awt.*;
+
+/**
+ * Arena moves all its snakes simultaneously. Every snake occupies the same
+ * OccupancyGrid, so a tick works in phases:
+ * <ol>
+ *   <li>every snake works out its new head cell (leaving the board kills it);</li>
+ *   <li>every tail that moves is freed, so a head may follow any tail;</li>
+ *   <li>a head on an occupied cell has hit a body, its own or another's;
+ *       two heads on the same cell kill both, found in a map of the cells
+ *       claimed this tick, sized by the snakes rather than the board;</li>
+ *   <li>the survivors enter their new cells, the dead are taken off the board.</li>
+ * </ol>
+ * Each phase is one lookup per snake, so a tick costs O(snakes) whatever
+ * their lengths; only a death walks a body, once. Apples and other pickups
+ * are found with one hashed lookup per head, however many lie on the board,
+ * and the ones eaten are replaced together at the end of the tick.
+ */
+public class Arena {
+
+    private static final int PLACEMENT_TRIES = 64; // Random picks for a cell that is free of snakes and apples
+
+    private final int columns;        // Board width in cells
+    private final int rows;           // Board height in cells
+    private final OccupancyGrid grid; // Cells covered by any snake
+    private final Snake[] snakes;     // All snakes, the player is usually index 0
+    private final boolean[] alive;    // False once a snake has died
+    private final boolean[] dying;    // Snakes killed in the current tick
+    private final int[] heads;        // New head cell of each snake in the current tick
+    private final CellItemMap claims; // New head cells of the current tick and the snake that claimed each
+    private final Pickups pickups;    // Apples and other pickups
+    private final GameRandom random;  // Places snakes and pickups
+    private int aliveCount;           // Number of snakes still alive
+    private long ticks;               // Number of ticks played
+    private final int[] dirtyCells;   // Cells whose picture changed in the last tick
+    private int dirtyCount;           // Number of entries in dirtyCells
+    private boolean bodiesRemoved;    // True if a snake died in the last tick, its whole body changed
+
+    /**
+     * Creates an arena with snakes and pickups on random free cells.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param snakeCount the number of snakes
+     * @param appleCount the number of apples and other pickups
+     * @param seed the seed for placing snakes and pickups
+     */
+    public Arena(int columns, int rows, int snakeCount, int appleCount, long seed) {
+        this.columns = columns;
+        this.rows = rows;
+        this.grid = new OccupancyGrid(columns, rows);
+        this.random = new GameRandom(seed);
+        this.snakes = new Snake[snakeCount];
+        this.alive = new boolean[snakeCount];
+        this.dying = new boolean[snakeCount];
+        this.heads = new int[snakeCount];
+        this.claims = new CellItemMap(snakeCount);
+        this.pickups = new Pickups(columns, rows, appleCount);
+        this.dirtyCells = new int[snakeCount * 3 + appleCount];
+
+        for (int i = 0; i < snakeCount; i++) {
+            int cell = freeCell();
+            if (cell < 0) {
+                throw new IllegalArgumentException("No room for " + snakeCount + " snakes");
+            }
+            snakes[i] = new Snake(grid, cell, towardsCentre(cell));
+            alive[i] = true;
+        }
+        aliveCount = snakeCount;
+        pickups.respawn(grid, random);
+    }
+
+    /**
+     * Plays one tick.
+     *
+     * @param directions the direction each snake wants, reversals are ignored
+     */
+    public void step(char[] directions) {
+        ticks++;
+        dirtyCount = 0;
+        bodiesRemoved = false;
+
+        // Work out every new head
+        for (int i = 0; i < snakes.length; i++) {
+            if (alive[i]) {
+                snakes[i].turn(directions[i]);
+                heads[i] = snakes[i].nextHead();
+                dying[i] = heads[i] < 0; // Off the board
+            }
+        }
+
+        // Free the tails that move
+        for (int i = 0; i < snakes.length; i++) {
+            if (alive[i] && !dying[i]) {
+                snakes[i].releaseTail();
+                markDirty(snakes[i].getRemovedTail());
+            }
+        }
+
+        // A head on a body dies, two heads on one cell both die
+        claims.clear();
+        for (int i = 0; i < snakes.length; i++) {
+            if (!alive[i] || dying[i]) {
+                continue;
+            }
+            int cell = heads[i];
+            if (grid.isOccupied(cell)) {
+                dying[i] = true;
+            }
+            int claimer = claims.put(cell, i);
+            if (claimer != CellItemMap.MISSING) {
+                dying[i] = true;
+                dying[claimer] = true; // Head-on collision
+            }
+        }
+
+        // Move the survivors and take the dead off the board
+        for (int i = 0; i < snakes.length; i++) {
+            if (!alive[i]) {
+                continue;
+            }
+            Snake snake = snakes[i];
+            if (dying[i]) {
+                snake.clear();
+                alive[i] = false;
+                aliveCount--;
+                bodiesRemoved = true;
+            } else {
+                markDirty(snake.body.headCell()); // Drawn as a body part from now on
+                snake.enter(heads[i]);
+                markDirty(heads[i]);
+            }
+        }
+
+        // Let the snakes eat, then replace what they ate in one go
+        for (int i = 0; i < snakes.length; i++) {
+            if (alive[i]) {
+                int kind = pickups.take(heads[i]);
+                if (kind >= 0) {
+                    snakes[i].feed(Pickups.growthOf(kind), Pickups.scoreOf(kind));
+                }
+            }
+        }
+        int placed = pickups.respawn(grid, random);
+        for (int k = pickups.getCount() - placed; k < pickups.getCount(); k++) {
+            markDirty(pickups.getCell(k));
+        }
+    }
+
+    /**
+     * @return a random cell with no snake and no pickup, or -1 if none was found
+     */
+    private int freeCell() {
+        for (int i = 0; i < PLACEMENT_TRIES; i++) {
+            int cell = grid.randomFreeCell(random);
+            if (cell < 0) {
+                return -1; // The board is full of snakes
+            }
+            if (!pickups.has(cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Chooses the direction that points a new snake at the larger stretch of
+     * the board.
+     */
+    private char towardsCentre(int cell) {
+        int x = cell % columns;
+        int y = cell / columns;
+        int dx = columns / 2 - x;
+        int dy = rows / 2 - y;
+        if (Math.abs(dx) >= Math.abs(dy)) {
+            return dx >= 0 ? 'R' : 'L';
+        }
+        return dy >= 0 ? 'D' : 'U';
+    }
+
+    /**
+     * Records a cell that has to be repainted after this tick.
+     */
+    private void markDirty(int cell) {
+        if (cell >= 0 && dirtyCount < dirtyCells.length) {
+            dirtyCells[dirtyCount++] = cell;
+        }
+    }
+
+    /**
+     * Draws the pickups and the living snakes.
+     *
+     * @param g the Graphics to draw on, in board coordinates
+     * @param alpha how far the game is between the last tick and the next one
+     */
+    public void draw(Graphics g, double alpha) {
+        pickups.draw(g);
+        for (int i = 0; i < snakes.length; i++) {
+            if (alive[i]) {
+                snakes[i].draw(g, alpha);
+            }
+        }
+    }
+
+    /**
+     * Finds the pickup closest to a cell, by Manhattan distance.
+     *
+     * @param cell a packed cell index
+     * @return the cell of the nearest pickup, or -1 if there is none
+     */
+    public int nearestApple(int cell) {
+        return pickups.nearest(cell);
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return true if an apple or another pickup lies on the cell
+     */
+    public boolean hasApple(int cell) {
+        return pickups.has(cell);
+    }
+
+    /**
+     * @return the apples and other pickups on the board
+     */
+    public Pickups getPickups() {
+        return pickups;
+    }
+
+    /**
+     * @param i a snake index
+     * @return the snake
+     */
+    public Snake getSnake(int i) {
+        return snakes[i];
+    }
+
+    /**
+     * @param i a snake index
+     * @return true if the snake has not died
+     */
+    public boolean isAlive(int i) {
+        return alive[i];
+    }
+
+    /**
+     * @return the number of snakes
+     */
+    public int getSnakeCount() {
+        return snakes.length;
+    }
+
+    /**
+     * @return the number of snakes still alive
+     */
+    public int getAliveCount() {
+        return aliveCount;
+    }
+
+    /**
+     * @return the grid of cells covered by any snake
+     */
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * @return the number of cells whose picture changed in the last tick
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * @param i an index below getDirtyCount()
+     * @return a packed cell index whose picture changed in the last tick
+     */
+    public int getDirtyCell(int i) {
+        return dirtyCells[i];
+    }
+
+    /**
+     * @return true if a snake died in the last tick, so more cells changed than getDirtyCount() tells
+     */
+    public boolean isBodiesRemoved() {
+        return bodiesRemoved;
+    }
+
+    /**
+     * @return the number of ticks played
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the board width in cells
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the board height in cells
+     */
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The BatchSimulator class plays many independent "Hunger Nagini" games across all cores.
+ * Every game has its own seeded random source, so a seed always produces the same game.
+ */
+package hungernagini;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * BatchSimulator runs a range of seeds on a fork-join pool. Each worker
+ * folds its games into its own GameStats and the partial results are
+ * combined on the way back, so no per-game result is kept in memory.
+ */
+public class BatchSimulator {
+
+    private static final int GAMES_PER_TASK = 64; // Below this many games a task is not split further
+
+    private final int columns;      // Board width in cells
+    private final int rows;         // Board height in cells
+    private final long maxTicks;    // Games still running after this many ticks are stopped
+    private final Supplier<? extends Bot> bots; // Creates a fresh bot for every game
+    private final ForkJoinPool pool; // Workers that play the games
+
+    /**
+     * Creates a simulator using every available core.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param maxTicks the tick limit of a single game
+     * @param bots creates the bot that plays each game
+     */
+    public BatchSimulator(int columns, int rows, long maxTicks, Supplier<? extends Bot> bots) {
+        this(columns, rows, maxTicks, bots, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a simulator running on the given pool.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param maxTicks the tick limit of a single game
+     * @param bots creates the bot that plays each game
+     * @param pool the pool that plays the games
+     */
+    public BatchSimulator(int columns, int rows, long maxTicks, Supplier<? extends Bot> bots, ForkJoinPool pool) {
+        this.columns = columns;
+        this.rows = rows;
+        this.maxTicks = maxTicks;
+        this.bots = bots;
+        this.pool = pool;
+    }
+
+    /**
+     * Plays the games for seeds firstSeed to firstSeed + games - 1.
+     *
+     * @param firstSeed the seed of the first game
+     * @param games the number of games to play
+     * @return the aggregated results
+     */
+    public GameStats run(long firstSeed, long games) {
+        return pool.invoke(new SeedRange(firstSeed, firstSeed + games));
+    }
+
+    /**
+     * Plays a single game to the end or to the tick limit.
+     *
+     * @param seed the seed of the game
+     * @return the finished game
+     */
+    public GameEngine play(long seed) {
+        GameEngine game = new GameEngine(columns, rows, seed);
+        Bot bot = bots.get();
+        while (game.getTicks() < maxTicks && game.step(bot.nextDirection(game))) {
+            // Keep playing until the game ends or runs out of ticks
+        }
+        return game;
+    }
+
+    /**
+     * Plays a half-open range of seeds, splitting it while it is large.
+     */
+    private class SeedRange extends RecursiveTask<GameStats> {
+
+        private static final long serialVersionUID = 1L; // Serializable through ForkJoinTask, never serialized here
+
+        private final long from; // First seed, inclusive
+        private final long to;   // Last seed, exclusive
+
+        SeedRange(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected GameStats compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                GameStats stats = new GameStats();
+                for (long seed = from; seed < to; seed++) {
+                    stats.accept(play(seed));
+                }
+                return stats;
+            }
+
+            long middle = from + (to - from) / 2;
+            SeedRange left = new SeedRange(from, middle);
+            left.fork(); // Let another worker take the first half
+            GameStats right = new SeedRange(middle, to).compute();
+            return left.join().combine(right);
+        }
+    }
+}
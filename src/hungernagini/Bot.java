@@ -0,0 +1,20 @@
+/*
+ * The Bot interface is implemented by computer players of the "Hunger Nagini" game.
+ */
+package hungernagini;
+
+/**
+ * A Bot chooses the direction of the snake before every tick of a
+ * GameEngine. Bots are used by the batch simulator, so an implementation
+ * should be deterministic for a given game state.
+ */
+public interface Bot {
+
+    /**
+     * Chooses the direction for the next tick.
+     *
+     * @param game the game being played, not to be modified
+     * @return 'U', 'D', 'L' or 'R'
+     */
+    char nextDirection(GameEngine game);
+}
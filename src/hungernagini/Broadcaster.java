@@ -0,0 +1,383 @@
+/*
+ * The Broadcaster class streams a live "Hunger Nagini" game to spectators.
+ * Each tick is encoded once as a few bytes in a shared buffer that every spectator reads
+ * at its own pace, so a tick costs the same however long the snake and however many watch.
+ */
+package hungernagini;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Broadcaster appends Protocol messages to a ring in one direct ByteBuffer:
+ * a STEP delta for every tick (new head, removed tail, apple and score), and
+ * a GAME keyframe when a game starts or a spectator asks for one. Each
+ * message is framed by an int holding its size and kind; a message never
+ * wraps around the end of the ring, the space left there is padding.
+ * <p>
+ * One thread publishes. Spectators are Subscribers, each read by one thread
+ * of its own; they follow the published position through a volatile field
+ * and keep a copy of the game up to date. A subscriber that falls more than
+ * a ring behind, or joins late, catches up from the latest keyframe; if that
+ * has been overwritten too, it asks for a new one, which the next publish()
+ * writes. Subscribers that keep up skip keyframes without decoding them.
+ * <p>
+ * A frame counts as overwritten once the writer could have reached it, so
+ * a subscriber checks its distance again after reading a frame header and
+ * after copying a message out. Reading a volatile field does not keep the
+ * plain reads of the ring before it from moving after it, so a load fence
+ * comes before each check: VarHandle.acquireFence() on Java 9 and later,
+ * Unsafe.loadFence() on Java 8. The writer can be at most one largest GAME
+ * message, a snake filling the board, beyond the published position; the
+ * ring is sized from that message, not from the keyframes written so far.
+ * <p>
+ * A subscriber can also relay() the messages instead of applying them, for
+ * a GameServer forwarding them to a spectator's connection.
+ */
+public class Broadcaster {
+
+    private static final int KIND_SHIFT = 24;             // Frame bits above the size
+    private static final int SIZE_MASK = (1 << KIND_SHIFT) - 1;
+    private static final int DELTA = 0;                   // Frame kind: a STEP every subscriber applies
+    private static final int KEYFRAME = 1;                // Frame kind: a GAME only catching-up subscribers read
+    private static final int RESTART = 2;                 // Frame kind: a GAME every subscriber loads, a new game
+    private static final int PADDING = 3;                 // Frame kind: the rest of the ring is unused
+    private static final int FRAME_HEADER = 4;            // Bytes of the frame int
+    private static final int MIN_CAPACITY = 64 * 1024;    // Smallest ring
+    private static final int MAX_FRAME = 1 << 28;         // Largest keyframe, two fit in the largest ring
+    private static final MethodHandle LOAD_FENCE = loadFenceHandle(); // Keeps ring reads before the next check
+
+    /**
+     * A spectator's view of the broadcast.
+     */
+    public final class Subscriber {
+
+        private final ByteBuffer view = ring.duplicate(); // This subscriber's window on the ring
+        private ByteBuffer message = ByteBuffer.allocate(256); // Copy of the message being read
+        private long position = -1;     // Ring position of the next frame, -1 until caught up
+        private boolean inStep;         // True once a keyframe has been read since the last catch-up
+        private GameEngine game;        // Copy of the game, null until the first keyframe
+        private long resyncs;           // Times this subscriber had to catch up from a keyframe
+        private int waiting;            // Size of the message relay() had no room for, 0 if none
+
+        private Subscriber() {
+        }
+
+        /**
+         * Applies every message published since the last call.
+         *
+         * @return the number of messages applied
+         */
+        public int poll() {
+            return read(null);
+        }
+
+        /**
+         * Copies every message published since the last call into a buffer
+         * instead of applying them: a GAME first when the subscriber joins or
+         * catches up, then STEPs. Stops early when the buffer has no room
+         * for the next message; the rest follows with the next call, and
+         * getWaiting() tells how much room that message needs.
+         *
+         * @param out the buffer to append the messages to
+         * @return the number of messages copied
+         */
+        public int relay(ByteBuffer out) {
+            return read(out);
+        }
+
+        /**
+         * Reads the published frames, applying the messages or, if out is
+         * not null, copying them into it.
+         */
+        private int read(ByteBuffer out) {
+            int applied = 0;
+            waiting = 0;
+            while (true) {
+                long end = written;
+                if (position < 0 || end - position > safeLag) {
+                    if (!catchUp(end)) {
+                        return applied; // Wait for the keyframe asked for
+                    }
+                }
+                if (position == end) {
+                    return applied;
+                }
+                int offset = (int) position & mask;
+                int frame = capacity - offset < FRAME_HEADER ? PADDING << KIND_SHIFT : view.getInt(offset);
+                int kind = frame >>> KIND_SHIFT;
+                int size = frame & SIZE_MASK;
+                loadFence();
+                if (written - position > safeLag) {
+                    position = -1; // The header may be the writer's, not the frame's
+                    continue;
+                }
+                if (kind == PADDING) {
+                    position += capacity - offset;
+                    continue;
+                }
+                boolean catchingUp = !inStep;
+                if (kind == KEYFRAME && !catchingUp) {
+                    position += FRAME_HEADER + size; // Already in step, nothing to learn
+                    continue;
+                }
+                copy(offset + FRAME_HEADER, size);
+                loadFence();
+                if (written - position > safeLag) {
+                    position = -1; // The writer may have reached the frame while it was copied
+                    continue;
+                }
+                if (kind == DELTA && catchingUp) {
+                    position += FRAME_HEADER + size; // Before the keyframe to start from
+                    continue;
+                }
+                if (out != null) {
+                    if (out.remaining() < size) {
+                        waiting = size;
+                        return applied; // Read again once the buffer has been drained
+                    }
+                    out.put(message);
+                } else if (kind == DELTA) {
+                    Protocol.readStep(game, message);
+                } else {
+                    game = Protocol.readGame(message); // Keyframe or new game
+                }
+                inStep = true;
+                applied++;
+                position += FRAME_HEADER + size;
+            }
+        }
+
+        /**
+         * Moves to the latest keyframe, or asks for one if there is none
+         * left in the ring.
+         *
+         * @return true if reading can go on
+         */
+        private boolean catchUp(long end) {
+            long keyframe = keyframeAt;
+            resyncs++;
+            inStep = false; // Deltas before the keyframe are skipped until it is read
+            if (keyframe >= 0 && end - keyframe <= safeLag) {
+                position = keyframe;
+                return true;
+            }
+            position = -1;
+            keyframeRequested = true;
+            return false;
+        }
+
+        /**
+         * Copies a message out of the ring, so the writer cannot change it
+         * while it is decoded.
+         */
+        private void copy(int offset, int size) {
+            if (message.capacity() < size) {
+                message = ByteBuffer.allocate(Integer.highestOneBit(size) << 1);
+            }
+            message.clear();
+            ByteBuffer source = view;
+            source.limit(offset + size);
+            source.position(offset);
+            message.put(source);
+            source.limit(capacity);
+            message.flip();
+        }
+
+        /**
+         * @return the subscriber's copy of the game, null until the first keyframe has arrived
+         */
+        public GameEngine getGame() {
+            return game;
+        }
+
+        /**
+         * @return true if the subscriber's game is as up to date as the messages read, false while it waits for a keyframe
+         */
+        public boolean isInStep() {
+            return inStep && position >= 0;
+        }
+
+        /**
+         * @return the size of the message the last relay() had no room for, 0 if it copied everything published
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * @return the number of times the subscriber fell behind or joined and read a keyframe
+         */
+        public long getResyncs() {
+            return resyncs;
+        }
+    }
+
+    private final ByteBuffer ring;      // Frames, written by the publisher only
+    private final ByteBuffer writer;    // The publisher's window on the ring
+    private final int capacity;         // Size of the ring, a power of two
+    private final int mask;             // capacity - 1
+    private final long safeLag;         // Furthest a frame may be behind written and still be intact
+    private final int columns;          // Board width of every game broadcast
+    private final int rows;             // Board height of every game broadcast
+    private GameEngine engine;          // The game being broadcast
+    private volatile long written;      // Position after the last frame, published after the bytes
+    private volatile long keyframeAt = -1; // Position of the latest keyframe, -1 if none
+    private volatile boolean keyframeRequested; // Set by a subscriber that needs a keyframe
+
+    /**
+     * Creates a broadcast of a game and writes its first keyframe.
+     *
+     * @param engine the game
+     * @param capacity the ring size in bytes, rounded up to a power of two and at least
+     *                 two of the largest keyframes; a subscriber may fall this far behind
+     * @throws IllegalArgumentException if the board is too large for a ring
+     */
+    public Broadcaster(GameEngine engine, int capacity) {
+        this.columns = engine.getColumns();
+        this.rows = engine.getRows();
+        long largest = FRAME_HEADER + Protocol.maxGameSize(columns, rows); // A snake filling the board
+        if (largest > MAX_FRAME) {
+            throw new IllegalArgumentException("A " + columns + "x" + rows + " board is too large to broadcast");
+        }
+        int needed = Math.max(Math.max(capacity, MIN_CAPACITY), 2 * (int) largest);
+        this.capacity = Integer.highestOneBit(needed - 1) << 1;
+        this.mask = this.capacity - 1;
+        // The writer may be filling the largest frame beyond written, so a reader must stay that much further away
+        this.safeLag = this.capacity - largest;
+        this.ring = ByteBuffer.allocateDirect(this.capacity);
+        this.writer = ring.duplicate();
+        restart(engine);
+    }
+
+    /**
+     * Starts broadcasting a new game on the same board size.
+     *
+     * @param engine the new game
+     * @throws IllegalArgumentException if the board size differs from the first game's
+     */
+    public void restart(GameEngine engine) {
+        if (engine.getColumns() != columns || engine.getRows() != rows) {
+            throw new IllegalArgumentException("Broadcast of a " + columns + "x" + rows + " board");
+        }
+        this.engine = engine;
+        appendGame(RESTART);
+    }
+
+    /**
+     * Publishes the step the game has just played. Called by the publishing
+     * thread after each step.
+     */
+    public void publish() {
+        int offset = reserve(Protocol.MAX_STEP_SIZE);
+        writer.position(offset + FRAME_HEADER);
+        Protocol.writeStep(engine, writer);
+        commit(offset, DELTA);
+        if (keyframeRequested) {
+            keyframeRequested = false;
+            appendGame(KEYFRAME);
+        }
+    }
+
+    /**
+     * Writes a GAME message for the current state of the game.
+     */
+    private void appendGame(int kind) {
+        int offset = reserve(Protocol.gameSize(engine));
+        writer.position(offset + FRAME_HEADER);
+        Protocol.writeGame(engine, writer);
+        long position = commit(offset, kind);
+        keyframeAt = position; // Subscribers that fall behind start again here
+    }
+
+    /**
+     * Makes room for a message of at most the given size, padding to the
+     * end of the ring if it would not fit before it.
+     *
+     * @return the ring offset of the frame
+     */
+    private int reserve(int size) {
+        int offset = (int) written & mask;
+        if (capacity - offset < FRAME_HEADER + size) {
+            if (capacity - offset >= FRAME_HEADER) {
+                writer.putInt(offset, PADDING << KIND_SHIFT);
+            }
+            written += capacity - offset; // Single writer, readers only see the final value
+            offset = 0;
+        }
+        return offset;
+    }
+
+    /**
+     * Frames the message written after the frame header and publishes it.
+     *
+     * @return the position of the frame
+     */
+    private long commit(int offset, int kind) {
+        int size = writer.position() - offset - FRAME_HEADER;
+        writer.putInt(offset, kind << KIND_SHIFT | size);
+        long position = written;
+        written = position + FRAME_HEADER + size; // Publishes the bytes to the subscribers
+        return position;
+    }
+
+    /**
+     * Adds a spectator. It sees the game from the latest keyframe on.
+     *
+     * @return the new subscriber, to be polled by one thread
+     */
+    public Subscriber subscribe() {
+        return new Subscriber();
+    }
+
+    /**
+     * @return the size of the ring in bytes
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of bytes published so far, padding included
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Finds the load fence of the running Java: VarHandle.acquireFence()
+     * from Java 9 on, Unsafe.loadFence() on Java 8.
+     */
+    private static MethodHandle loadFenceHandle() {
+        MethodType type = MethodType.methodType(void.class);
+        try {
+            Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+            return MethodHandles.publicLookup().findStatic(varHandle, "acquireFence", type);
+        } catch (ReflectiveOperationException e) {
+            // Java 8, which has the fence on Unsafe only
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", type).bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ExceptionInInitializerError(e); // Every Java 8 JVM the game runs on has it
+        }
+    }
+
+    /**
+     * Keeps the reads of the ring before it from moving after the reads
+     * of written that follow.
+     */
+    private static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new AssertionError(e); // The fences throw nothing
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The Camera class decides which part of the "Hunger Nagini" board is shown in the window.
+ * It follows the snake's head on boards larger than the screen.
+ */
+package hungernagini;
+
+/**
+ * Camera is the top-left cell of the visible area. It moves in whole cells,
+ * only when the head comes within a margin of the edge of the view, and
+ * never shows anything outside the board.
+ */
+public class Camera {
+
+    private final int boardColumns; // Board width in cells
+    private final int boardRows;    // Board height in cells
+    private final int viewColumns;  // Visible width in cells
+    private final int viewRows;     // Visible height in cells
+    private final int marginX;      // Cells kept between the head and the left or right edge of the view
+    private final int marginY;      // Cells kept between the head and the top or bottom edge of the view
+    private int x;                  // Leftmost visible column
+    private int y;                  // Topmost visible row
+
+    /**
+     * Creates a camera looking at the top-left corner of the board.
+     *
+     * @param boardColumns the board width in cells
+     * @param boardRows the board height in cells
+     * @param viewColumns the visible width in cells
+     * @param viewRows the visible height in cells
+     */
+    public Camera(int boardColumns, int boardRows, int viewColumns, int viewRows) {
+        this.boardColumns = boardColumns;
+        this.boardRows = boardRows;
+        this.viewColumns = viewColumns;
+        this.viewRows = viewRows;
+        this.marginX = viewColumns / 4;
+        this.marginY = viewRows / 4;
+    }
+
+    /**
+     * Moves the view, if needed, so the given cell stays away from its edges.
+     *
+     * @param cell the packed cell index to follow
+     * @return true if the view moved
+     */
+    public boolean follow(int cell) {
+        int cellX = cell % boardColumns;
+        int cellY = cell / boardColumns;
+        int newX = clamp(x, cellX, marginX, viewColumns, boardColumns);
+        int newY = clamp(y, cellY, marginY, viewRows, boardRows);
+        boolean moved = newX != x || newY != y;
+        x = newX;
+        y = newY;
+        return moved;
+    }
+
+    /**
+     * Computes the view origin along one axis.
+     */
+    private static int clamp(int origin, int target, int margin, int view, int board) {
+        if (target < origin + margin) {
+            origin = target - margin;
+        } else if (target >= origin + view - margin) {
+            origin = target - view + margin + 1;
+        }
+        return Math.max(0, Math.min(origin, board - view));
+    }
+
+    /**
+     * @return the leftmost visible column
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return the topmost visible row
+     */
+    public int getY() {
+        return y;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * The CellItemMap class maps board cells of the "Hunger Nagini" game to small int values.
+ * It finds what lies on a cell with one hash and usually one probe, and never boxes.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+
+/**
+ * CellItemMap is an open-addressing hash map from packed cell indices to
+ * non-negative ints, with linear probing in two parallel arrays. Keys are
+ * spread with a Fibonacci multiply, so neighbouring cells land far apart.
+ * The table is kept at most half full, and removal shifts the following
+ * entries back instead of leaving tombstones, so probe runs stay short
+ * however many items come and go.
+ */
+public class CellItemMap {
+
+    public static final int MISSING = -1; // Value returned for a cell with nothing on it
+
+    private static final int EMPTY = -1;  // Key of an unused slot, cells are never negative
+
+    private int[] keys;   // Cell of each slot, EMPTY if unused
+    private int[] values; // Value of each slot
+    private int mask;     // keys.length - 1, a power of two minus one
+    private int shift;    // 32 - log2(keys.length), turns a hash into a slot
+    private int size;     // Number of entries
+
+    /**
+     * Creates a map.
+     *
+     * @param expected the number of entries it should hold without growing
+     */
+    public CellItemMap(int expected) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) << 1));
+    }
+
+    /**
+     * Sets up empty tables.
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * @return the home slot of a cell
+     */
+    private int slotOf(int cell) {
+        return (cell * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return the value stored for the cell, or MISSING
+     */
+    public int get(int cell) {
+        for (int slot = slotOf(cell); ; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == cell) {
+                return values[slot];
+            }
+            if (key == EMPTY) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return true if the cell has a value
+     */
+    public boolean containsKey(int cell) {
+        return get(cell) != MISSING;
+    }
+
+    /**
+     * Stores a value for a cell.
+     *
+     * @param cell a packed cell index
+     * @param value a non-negative value
+     * @return the previous value, or MISSING
+     */
+    public int put(int cell, int value) {
+        for (int slot = slotOf(cell); ; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == cell) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (key == EMPTY) {
+                keys[slot] = cell;
+                values[slot] = value;
+                if (++size > (mask + 1) >>> 1) {
+                    grow();
+                }
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * Removes the value of a cell.
+     *
+     * @param cell a packed cell index
+     * @return the removed value, or MISSING if there was none
+     */
+    public int remove(int cell) {
+        int slot = slotOf(cell);
+        while (keys[slot] != cell) {
+            if (keys[slot] == EMPTY) {
+                return MISSING;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot];
+        size--;
+
+        // Shift later entries of the probe run back into the hole, unless that would move them before their home slot
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        return removed;
+    }
+
+    /**
+     * Doubles the tables and puts every entry back.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+}
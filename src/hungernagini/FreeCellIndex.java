@@ -0,0 +1,182 @@
+/*
+ * The FreeCellIndex class keeps count of the empty cells on the "Hunger Nagini" board.
+ * It lets a new apple be placed with a single random pick, however full the board is.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * FreeCellIndex counts the free cells of each block of BLOCK_CELLS cells of
+ * an OccupancyGrid's bitset in a Fenwick tree. A random pick draws a rank
+ * below size(), walks down the tree to the block holding the free cell of
+ * that rank, counts the free cells of the block's words with bitCount()
+ * and finds the cell within its word. Taking or freeing a cell updates the
+ * counts on one path of the tree, which on a window-sized board is a
+ * single block.
+ * <p>
+ * The pick depends only on which cells are free, not on the order they
+ * were freed in, so a game restored from a snapshot of its snake places
+ * the same apples as the original without saving the index. It costs
+ * 4 bytes per block.
+ */
+public class FreeCellIndex {
+
+    private static final int BLOCK_SHIFT = 12;             // log2 of the cells per block
+    private static final int BLOCK_CELLS = 1 << BLOCK_SHIFT; // Cells counted together, 64 words
+
+    private final long[] bits;  // The grid's bitset, set bits are taken cells
+    private final int cellCount; // Number of cells on the board
+    private final int[] tree;   // Fenwick tree of the free cells per block, 1-based
+    private final int topStep;  // Largest power of two not above the number of blocks
+    private int size;           // Number of free cells
+
+    /**
+     * Creates an index of the free cells of a bitset.
+     *
+     * @param bits the occupancy bitset, read but never changed by the index
+     * @param cellCount the number of cells on the board
+     */
+    FreeCellIndex(long[] bits, int cellCount) {
+        this.bits = bits;
+        this.cellCount = cellCount;
+        int blocks = (cellCount + BLOCK_CELLS - 1) >>> BLOCK_SHIFT;
+        this.tree = new int[blocks + 1];
+        this.topStep = Integer.highestOneBit(Math.max(1, blocks));
+        rebuild();
+    }
+
+    /**
+     * @return the number of free cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if no cell is free
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return true if the cell is free
+     */
+    public boolean contains(int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) == 0;
+    }
+
+    /**
+     * Picks a free cell uniformly at random.
+     *
+     * @param random the random source to use
+     * @return a free cell, or -1 if the board is full
+     */
+    public int random(Random random) {
+        if (size == 0) {
+            return -1;
+        }
+        return select(random.nextInt(size));
+    }
+
+    /**
+     * Finds the free cell of a rank, counting free cells in board order.
+     *
+     * @param rank a number below size()
+     * @return the free cell with rank free cells before it
+     */
+    public int select(int rank) {
+        int block = 0;
+        for (int step = topStep; step > 0; step >>>= 1) {
+            int next = block + step;
+            if (next < tree.length && tree[next] <= rank) {
+                block = next;
+                rank -= tree[next];
+            }
+        }
+        int word = block << (BLOCK_SHIFT - 6);
+        while (true) {
+            int free = Math.min(64, cellCount - (word << 6)) - Long.bitCount(bits[word]);
+            if (rank < free) {
+                break;
+            }
+            rank -= free;
+            word++;
+        }
+        return (word << 6) + bitOfRank(~bits[word], rank); // The bits past the board are never reached
+    }
+
+    /**
+     * Finds a set bit of a word by its rank, halving the word until the bit
+     * is found.
+     *
+     * @param word the bits to search
+     * @param rank a number below the word's bit count
+     * @return the position of the set bit with rank set bits below it
+     */
+    static int bitOfRank(long word, int rank) {
+        int bit = 0;
+        for (int width = 32; width > 0; width >>>= 1) {
+            long low = word & ((1L << width) - 1);
+            int count = Long.bitCount(low);
+            if (rank >= count) {
+                rank -= count;
+                word >>>= width;
+                bit += width;
+            } else {
+                word = low;
+            }
+        }
+        return bit;
+    }
+
+    /**
+     * Counts a free cell as taken. Called by the grid after it set the
+     * cell's bit.
+     *
+     * @param cell a packed cell index
+     */
+    void remove(int cell) {
+        size--;
+        for (int i = (cell >>> BLOCK_SHIFT) + 1; i < tree.length; i += i & -i) {
+            tree[i]--;
+        }
+    }
+
+    /**
+     * Counts a taken cell as free. Called by the grid after it cleared the
+     * cell's bit.
+     *
+     * @param cell a packed cell index
+     */
+    void add(int cell) {
+        size++;
+        for (int i = (cell >>> BLOCK_SHIFT) + 1; i < tree.length; i += i & -i) {
+            tree[i]++;
+        }
+    }
+
+    /**
+     * Recounts every word from the bitset, after bits were changed without
+     * remove() or add().
+     */
+    void rebuild() {
+        size = 0;
+        Arrays.fill(tree, 0);
+        for (int word = 0; word < bits.length; word++) {
+            int cells = Math.min(64, cellCount - (word << 6)); // The last word may be partly off the board
+            int free = cells - Long.bitCount(bits[word]);
+            tree[(word >>> (BLOCK_SHIFT - 6)) + 1] += free;
+            size += free;
+        }
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
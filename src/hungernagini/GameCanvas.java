@@ -0,0 +1,105 @@
+/*
+ * The GameCanvas class shows the "Hunger Nagini" game with active rendering.
+ * Frames are drawn into a back buffer and flipped to the screen by whoever renders,
+ * usually the game loop thread, instead of waiting for Swing to schedule a paint.
+ */
+package hungernagini;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.function.Consumer;
+
+/**
+ * GameCanvas owns a BufferStrategy with BUFFERS buffers. AWT makes them
+ * accelerated VolatileImages where the pipeline allows, and uses page
+ * flipping, which waits for the vertical retrace, where the screen
+ * supports it; otherwise show() blits. renderFrame() draws a whole frame
+ * with the painter and shows it, redrawing when the buffers' contents are
+ * lost, as the BufferStrategy documentation prescribes.
+ * <p>
+ * The canvas also repaints itself when AWT asks, after an expose or a
+ * repaint() call, so screens drawn only on demand such as the menu work
+ * without a loop. Frames may be rendered from any thread; they are drawn
+ * while holding the lock given to the constructor, the lock that guards
+ * the state the painter draws.
+ */
+public class GameCanvas extends Canvas {
+
+    private static final long serialVersionUID = 1L; // Serializable through Component, never serialized
+
+    private static final int BUFFERS = 3; // Front buffer and two back buffers, so drawing rarely waits for a flip
+
+    private final Object lock;                // Held while a frame is drawn
+    private final Consumer<Graphics> painter; // Draws a whole frame, clip set to the canvas
+    private BufferStrategy strategy;          // Created when the canvas is first shown
+    private long frames;                      // Frames shown
+
+    /**
+     * Creates a canvas.
+     *
+     * @param lock the lock guarding what the painter draws
+     * @param painter draws a whole frame
+     * @param width the width in pixels
+     * @param height the height in pixels
+     */
+    public GameCanvas(Object lock, Consumer<Graphics> painter, int width, int height) {
+        this.lock = lock;
+        this.painter = painter;
+        setPreferredSize(new Dimension(width, height));
+        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Draws a frame and shows it.
+     */
+    public void renderFrame() {
+        synchronized (lock) {
+            if (strategy == null) {
+                if (!isDisplayable()) {
+                    return; // Not on screen yet, there is nothing to draw on
+                }
+                createBufferStrategy(BUFFERS);
+                strategy = getBufferStrategy();
+            }
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        g.setClip(0, 0, getWidth(), getHeight()); // The draw methods cull against the clip
+                        painter.accept(g);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored()); // The buffer was recreated while drawing, draw again
+                strategy.show();
+            } while (strategy.contentsLost());
+            Toolkit.getDefaultToolkit().sync(); // Push the frame out now rather than when the window system batches it
+            frames++;
+        }
+    }
+
+    /**
+     * Renders a frame when AWT asks for a repaint.
+     */
+    @Override
+    public void paint(Graphics g) {
+        renderFrame();
+    }
+
+    /**
+     * Renders without clearing first, the painter fills the whole frame.
+     */
+    @Override
+    public void update(Graphics g) {
+        renderFrame();
+    }
+
+    /**
+     * @return the number of frames shown
+     */
+    public long getFrames() {
+        synchronized (lock) {
+            return frames;
+        }
+    }
+}
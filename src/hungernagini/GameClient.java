@@ -0,0 +1,210 @@
+/*
+ * The GameClient class connects the "Hunger Nagini" window to a GameServer.
+ * The server plays the game; the client keeps a copy of it up to date for drawing.
+ */
+package hungernagini;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * GameClient sends direction keys to the server and applies the messages it
+ * sends back to a local GameEngine, which is then drawn like a local game.
+ * It is used from one thread at a time: connecting, newGame() and watch()
+ * block until the server has answered or a timeout has passed, so they
+ * belong off the event thread; receive() never blocks. A watching client
+ * only receives; its game is replaced in place whenever the server sends a
+ * new one.
+ */
+public class GameClient implements Closeable {
+
+    public static final int CONNECT_TIMEOUT_MILLIS = 5_000; // Longest wait for the server to accept
+    public static final int GAME_TIMEOUT_MILLIS = 10_000;   // Longest wait for the game after NEW_GAME
+    public static final int WATCH_TIMEOUT_MILLIS = 60_000;  // Longest wait for someone to play after WATCH
+
+    private final SocketChannel channel;   // Connection to the server, non-blocking once connected
+    private final Selector selector;       // Waits for input while a request is answered
+    private ByteBuffer input = ByteBuffer.allocate(64 * 1024); // Received bytes not applied yet
+    private final ByteBuffer command = ByteBuffer.allocate(1); // One-byte command being sent
+
+    /**
+     * Connects to a server.
+     *
+     * @param host the server's host name
+     * @param port the server's port
+     * @throws IOException if the connection fails or takes longer than CONNECT_TIMEOUT_MILLIS
+     */
+    public GameClient(String host, int port) throws IOException {
+        channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            channel.socket().setTcpNoDelay(true); // A turn is one byte and must leave at once
+            channel.configureBlocking(false);
+            selector = Selector.open();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Connects to a server given as "host" or "host:port".
+     *
+     * @param address the server address
+     * @return the connected client
+     * @throws IOException if the connection fails or times out
+     */
+    public static GameClient connect(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new GameClient(address, Protocol.DEFAULT_PORT);
+        }
+        return new GameClient(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    /**
+     * Asks the server for a new game and waits for it.
+     *
+     * @return the client's copy of the new game
+     * @throws IOException if the connection fails or no game comes within GAME_TIMEOUT_MILLIS
+     */
+    public GameEngine newGame() throws IOException {
+        return request(Protocol.NEW_GAME, GAME_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Asks the server to follow another client's game and waits until it
+     * is sent, which is as soon as someone plays on the server.
+     *
+     * @return the client's copy of the watched game
+     * @throws IOException if the connection fails or no game comes within WATCH_TIMEOUT_MILLIS
+     */
+    public GameEngine watch() throws IOException {
+        return request(Protocol.WATCH, WATCH_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Sends a command and waits for the GAME message the server answers with.
+     */
+    private GameEngine request(byte command, int timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        send(command);
+        input.flip();
+        while (true) {
+            // Skip the steps of the previous game still on their way
+            while (Protocol.readStep(null, input)) {
+                // Discarded
+            }
+            GameEngine engine = Protocol.readGame(input);
+            if (engine != null) {
+                input.compact();
+                return engine;
+            }
+            fill(deadline, timeoutMillis);
+        }
+    }
+
+    /**
+     * Sends a change of direction.
+     *
+     * @param direction 'U', 'D', 'L' or 'R'
+     * @throws IOException if the connection fails
+     */
+    public void turn(char direction) throws IOException {
+        send((byte) direction);
+    }
+
+    /**
+     * Applies the steps received since the last call, and loads any game
+     * sent in their place into the same engine.
+     *
+     * @param engine the game returned by newGame() or watch()
+     * @return the number of steps applied, or -1 if a whole game was loaded
+     * @throws IOException if the connection fails or the server closed it
+     */
+    public int receive(GameEngine engine) throws IOException {
+        if (channel.read(input) < 0) {
+            throw new IOException("Connection closed by the server");
+        }
+        input.flip();
+        int steps = 0;
+        boolean loaded = false;
+        while (true) {
+            if (Protocol.readStep(engine, input)) {
+                steps++;
+            } else if (Protocol.reloadGame(engine, input)) {
+                loaded = true; // A watched game restarted, or the server caught this client up
+            } else {
+                break;
+            }
+        }
+        input.compact();
+        if (!input.hasRemaining()) {
+            growInput(); // A game larger than the buffer, make room for the rest of it
+        }
+        return loaded ? -1 : steps;
+    }
+
+    /**
+     * Waits for more bytes and reads them, with input flipped for reading
+     * before and after.
+     *
+     * @param deadline the System.nanoTime() after which to give up
+     * @param timeoutMillis the whole wait, for the message
+     */
+    private void fill(long deadline, int timeoutMillis) throws IOException {
+        input.compact();
+        if (!input.hasRemaining()) {
+            growInput(); // A game larger than the buffer, make room for it
+        }
+        int read;
+        while ((read = channel.read(input)) == 0) {
+            long millis = (deadline - System.nanoTime()) / 1_000_000L;
+            if (millis <= 0) {
+                input.flip();
+                throw new SocketTimeoutException("No game from the server within " + timeoutMillis + " ms");
+            }
+            selector.select(millis);
+            selector.selectedKeys().clear();
+        }
+        input.flip();
+        if (read < 0) {
+            throw new IOException("Connection closed by the server");
+        }
+    }
+
+    /**
+     * Doubles the input buffer, which is full and in write mode.
+     */
+    private void growInput() {
+        ByteBuffer bigger = ByteBuffer.allocate(input.capacity() * 2);
+        input.flip();
+        bigger.put(input);
+        input = bigger;
+    }
+
+    /**
+     * Writes a one-byte command.
+     */
+    private void send(byte value) throws IOException {
+        command.clear();
+        command.put(value);
+        command.flip();
+        while (command.hasRemaining()) {
+            channel.write(command);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        channel.close();
+    }
+}
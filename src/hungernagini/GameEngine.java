@@ -0,0 +1,262 @@
+/*
+ * The GameEngine class runs the rules of the "Hunger Nagini" game.
+ * It owns the snake, the apple and the random source, and has no dependency on Swing or AWT,
+ * so games can be simulated headless as fast as the CPU allows.
+ */
+package hungernagini;
+
+/**
+ * GameEngine holds the state of one game and advances it one tick at a time
+ * with step(direction). Main drives it from its game loop and only renders
+ * the result.
+ */
+public class GameEngine {
+
+    private final int columns;  // Board width in cells
+    private final int rows;     // Board height in cells
+    private final Snake snake;  // The player's snake
+    private final Apple apple;  // The apple, placed with the engine's random source
+    private final GameRandom random; // Random source for apple placement, its state is saved in snapshots
+    private boolean running = true; // False once the snake has crashed or filled the board
+    private boolean won;        // True if the game ended with the board full
+    private long ticks;         // Number of steps played
+    private final int[] dirtyCells = new int[4]; // Cells whose picture changed in the last step
+    private int dirtyCount;     // Number of entries in dirtyCells
+    private boolean scoreChanged; // True if the last step changed the score
+
+    /**
+     * Creates a game with a seeded random source, so the same seed and the
+     * same directions always play out the same way.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param seed the seed for apple placement
+     */
+    public GameEngine(int columns, int rows, long seed) {
+        this(columns, rows, new GameRandom(seed));
+    }
+
+    /**
+     * Creates a game using the given random source for apple placement.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param random the random source for apple placement
+     */
+    public GameEngine(int columns, int rows, GameRandom random) {
+        this.columns = columns;
+        this.rows = rows;
+        this.random = random;
+        this.snake = new Snake(columns, rows);
+        this.apple = new Apple(snake, random);
+    }
+
+    /**
+     * Advances the game by one tick: turns the snake (a reversal is ignored),
+     * moves it, checks for collisions and lets it eat the apple.
+     *
+     * @param direction 'U', 'D', 'L' or 'R'
+     * @return true if the game is still running after the tick
+     */
+    public boolean step(char direction) {
+        if (!running) {
+            return false;
+        }
+        ticks++;
+        dirtyCount = 0;
+        scoreChanged = false;
+        int oldHead = snake.body.headCell();
+        int oldApple = apple.getCell();
+        int oldScore = snake.applesEaten;
+
+        snake.turn(direction);
+        snake.move();
+
+        if (!snake.checkCollisions()) {
+            running = false; // Crashed into a wall or itself
+            return false;
+        }
+
+        // The old head is now drawn as a body part, the new head and the freed cell change too
+        markDirty(oldHead);
+        markDirty(snake.body.headCell());
+        if (snake.getRemovedTail() >= 0) {
+            markDirty(snake.getRemovedTail());
+        }
+
+        snake.checkApple(apple);
+        if (apple.getCell() != oldApple) {
+            markDirty(apple.getCell()); // The apple's old cell is the new head, already marked
+        }
+        scoreChanged = snake.applesEaten != oldScore;
+        if (apple.isBoardFull()) {
+            won = true;      // The snake covers every cell
+            running = false;
+        }
+        return running;
+    }
+
+    /**
+     * Records a cell that has to be repainted after this step.
+     */
+    private void markDirty(int cell) {
+        dirtyCells[dirtyCount++] = cell;
+    }
+
+    /**
+     * @return the number of cells whose picture changed in the last step
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * @param i an index below getDirtyCount()
+     * @return a packed cell index whose picture changed in the last step
+     */
+    public int getDirtyCell(int i) {
+        return dirtyCells[i];
+    }
+
+    /**
+     * @return true if the last step changed the score
+     */
+    public boolean isScoreChanged() {
+        return scoreChanged;
+    }
+
+    /**
+     * Advances the game by one tick without turning.
+     *
+     * @return true if the game is still running after the tick
+     */
+    public boolean step() {
+        return step(snake.direction);
+    }
+
+    /**
+     * Sets the engine's own fields when a snapshot is restored.
+     */
+    void restore(long ticks, boolean running, boolean won) {
+        this.ticks = ticks;
+        this.running = running;
+        this.won = won;
+        this.dirtyCount = 0;
+        this.scoreChanged = false;
+    }
+
+    /**
+     * Starts a step that was played elsewhere, see Protocol.readStep().
+     */
+    void beginRemoteStep() {
+        ticks++;
+        dirtyCount = 0;
+        scoreChanged = false;
+    }
+
+    /**
+     * Moves the snake as a step played elsewhere did, marking the same cells
+     * dirty as step() would.
+     */
+    void applyRemoteMove(int head, int removedTail) {
+        markDirty(snake.body.headCell());
+        snake.applyMove(head, removedTail);
+        markDirty(head);
+        if (removedTail >= 0) {
+            markDirty(removedTail);
+        }
+    }
+
+    /**
+     * Sets the score and the apple as a step played elsewhere did.
+     *
+     * @param appleCell the new apple cell, or -1 if the board is full
+     * @param score the number of apples eaten
+     */
+    void applyRemoteApple(int appleCell, int score) {
+        snake.applesEaten = score;
+        scoreChanged = true;
+        apple.place(Math.max(appleCell, 0), appleCell < 0);
+        if (appleCell >= 0) {
+            markDirty(appleCell);
+        }
+    }
+
+    /**
+     * Sets the result of a step played elsewhere.
+     */
+    void applyRemoteResult(boolean running, boolean won) {
+        this.running = running;
+        this.won = won;
+    }
+
+    /**
+     * @return the random source used for apple placement
+     */
+    public GameRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * @return the snake
+     */
+    public Snake getSnake() {
+        return snake;
+    }
+
+    /**
+     * @return the apple
+     */
+    public Apple getApple() {
+        return apple;
+    }
+
+    /**
+     * @return true until the snake crashes or fills the board
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return true if the game ended with the snake covering the whole board
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * @return the number of apples eaten
+     */
+    public int getScore() {
+        return snake.applesEaten;
+    }
+
+    /**
+     * @return the number of segments of the snake
+     */
+    public int getLength() {
+        return snake.body.size();
+    }
+
+    /**
+     * @return the number of steps played
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the board width in cells
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the board height in cells
+     */
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The GameLoop class drives the "Hunger Nagini" game from its own thread.
+ * Game logic runs at a fixed tick rate measured with System.nanoTime, while frames are
+ * rendered at the display rate with the position between two ticks.
+ */
+package hungernagini;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * GameLoop runs a fixed-timestep loop. Every frame it adds the elapsed time
+ * to an accumulator, runs as many logic ticks as fit in it (catching up
+ * after a slow frame, up to a limit) and renders with the leftover fraction
+ * of a tick so movement can be interpolated. Frame time, tick lag and tick
+ * jitter are kept as statistics.
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * What the loop drives.
+     */
+    public interface Listener {
+
+        /**
+         * Runs one logic tick.
+         *
+         * @return false to stop the loop
+         */
+        boolean update();
+
+        /**
+         * Renders a frame.
+         *
+         * @param alpha how far the game is between the last tick and the next one, from 0 to 1
+         */
+        void render(double alpha);
+    }
+
+    private static final int MAX_TICKS_PER_FRAME = 5; // Catch-up limit, so a long stall cannot freeze rendering
+    private static final double SMOOTHING = 0.05;     // Weight of a new sample in the averaged statistics
+
+    private final Listener listener; // The game being driven
+    private final long tickNanos;    // Length of a logic tick
+    private final long frameNanos;   // Length of a frame at the display rate
+    private volatile boolean running; // Cleared to stop the loop
+    private Thread thread;           // The loop thread while it runs
+
+    // Statistics, written by the loop thread only
+    private volatile double frameTimeNanos;  // Average time between frames
+    private volatile double jitterNanos;     // Average distance between a tick interval and tickNanos
+    private volatile long tickLagNanos;      // Time the logic is behind real time after the last frame
+    private volatile long ticks;             // Ticks run
+    private volatile long frames;            // Frames rendered
+    private long lastTickTime;               // When the previous tick ran
+
+    /**
+     * Creates a loop.
+     *
+     * @param listener the game to drive
+     * @param ticksPerSecond the fixed logic rate
+     * @param framesPerSecond the rendering rate, usually the display refresh rate
+     */
+    public GameLoop(Listener listener, int ticksPerSecond, int framesPerSecond) {
+        this.listener = listener;
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.frameNanos = 1_000_000_000L / framesPerSecond;
+    }
+
+    /**
+     * Starts the loop on a new thread.
+     */
+    public synchronized void start() {
+        running = true;
+        thread = new Thread(this, "Hunger Nagini game loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop and waits for its thread to finish, unless called from
+     * the loop thread itself.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        lastTickTime = previous;
+
+        while (running) {
+            long now = System.nanoTime();
+            long elapsed = now - previous;
+            previous = now;
+            accumulator += elapsed;
+            frameTimeNanos += (elapsed - frameTimeNanos) * SMOOTHING;
+
+            // Run the ticks that are due, several in a row if rendering fell behind
+            int steps = 0;
+            while (accumulator >= tickNanos && steps < MAX_TICKS_PER_FRAME) {
+                accumulator -= tickNanos;
+                steps++;
+                recordTick(System.nanoTime());
+                if (!listener.update()) {
+                    running = false;
+                    return;
+                }
+            }
+            if (accumulator >= tickNanos) {
+                accumulator = tickNanos - 1; // Give up on the time that could not be caught up
+            }
+            tickLagNanos = accumulator;
+
+            listener.render((double) accumulator / tickNanos);
+            frames++;
+
+            // Sleep until the next frame is due
+            long sleep = frameNanos - (System.nanoTime() - now);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+        }
+    }
+
+    /**
+     * Updates the tick count and jitter.
+     */
+    private void recordTick(long now) {
+        long interval = now - lastTickTime;
+        lastTickTime = now;
+        if (ticks > 0) {
+            jitterNanos += (Math.abs(interval - tickNanos) - jitterNanos) * SMOOTHING;
+        }
+        ticks++;
+    }
+
+    /**
+     * @return true while the loop thread runs
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the average time between two frames, in nanoseconds
+     */
+    public double getFrameTimeNanos() {
+        return frameTimeNanos;
+    }
+
+    /**
+     * @return how far the logic was behind real time at the last frame, in nanoseconds
+     */
+    public long getTickLagNanos() {
+        return tickLagNanos;
+    }
+
+    /**
+     * @return the average distance between a tick interval and the fixed tick length, in nanoseconds
+     */
+    public double getJitterNanos() {
+        return jitterNanos;
+    }
+
+    /**
+     * @return the number of ticks run
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the number of frames rendered
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frame=%.2fms lag=%.2fms jitter=%.2fms ticks=%d frames=%d",
+                frameTimeNanos / 1e6, tickLagNanos / 1e6, jitterNanos / 1e6, ticks, frames);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The GameRandom class is the random source of a "Hunger Nagini" game.
+ * Unlike java.util.Random its whole state is a single long that can be read and restored,
+ * so snapshots and replay keyframes can resume a game exactly.
+ */
+package hungernagini;
+
+import java.util.Random;
+
+/**
+ * GameRandom is a SplitMix64 generator behind the java.util.Random API, so
+ * it can be passed wherever a Random is expected. All the int and long
+ * methods go through next(), which reads only the 64-bit state. The cached
+ * second value of nextGaussian() is not part of that state.
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L; // Serializable through Random, the state field is saved with it
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L; // Increment of the SplitMix64 state
+
+    private long state; // The whole state of the generator, set by setSeed() from Random's constructor
+
+    /**
+     * Creates a generator with the given seed.
+     *
+     * @param seed the seed
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = seed;
+    }
+
+    /**
+     * @return the state of the generator, to be saved in a snapshot
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state returned by getState().
+     *
+     * @param state the state to continue from
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Creates an independent generator seeded from this one, for a thread
+     * or a search that must not share this generator's sequence. Splitting
+     * the same state always gives the same generator.
+     *
+     * @return the new generator
+     */
+    public GameRandom split() {
+        return new GameRandom(nextLong() ^ GOLDEN_GAMMA * nextLong());
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        long z = (state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * The GameServer class hosts "Hunger Nagini" games for clients connecting over TCP.
+ * One thread multiplexes every connection with a Selector and runs every room on a shared tick,
+ * so thousands of games cost one thread and a few kilobytes each.
+ */
+package hungernagini;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * GameServer is the authority for the games of its clients. Each connection
+ * gets a room with its own GameEngine. Commands from the client are queued
+ * as they arrive; every tick each room takes at most one turn, steps its
+ * game and writes its STEP message, see Protocol, with a single write per
+ * room. A client that cannot keep up with its messages is disconnected.
+ * <p>
+ * A client that sends WATCH becomes a spectator of the oldest room with a
+ * game. That room then publishes each step once to a Broadcaster, and
+ * every spectator relays the shared messages into its own output, so a
+ * step is encoded once however many watch it.
+ */
+public class GameServer implements Runnable, Closeable {
+
+    private static final int OUTPUT_CAPACITY = 4096;  // Bytes a slow client may fall behind before it is dropped
+    private static final int MAX_LATE_TICKS = 5;      // Ticks the server may fall behind before it skips them
+    private static final double SMOOTHING = 0.05;     // Weight of a new sample in the averaged tick time
+
+    /**
+     * The game of one connection.
+     */
+    private static final class Room {
+
+        final SocketChannel channel;  // Connection to the client
+        final SelectionKey key;       // Registration of the channel with the selector
+        final InputQueue input = new InputQueue(16); // Directions received since the last ticks
+        ByteBuffer output = ByteBuffer.allocate(OUTPUT_CAPACITY); // Messages not sent yet
+        GameEngine engine;            // The game, null until the client asks for one
+        boolean newGame;              // Set when the client asked for a new game
+        boolean watch;                // Set when the client asked to watch another game
+        boolean closed;               // Set once the connection is closed
+        Broadcaster broadcast;        // Steps of the game for its spectators, null while none watches
+        int spectators;               // Rooms watching this one
+        Room watched;                 // The room this client watches, null for a player
+        Broadcaster.Subscriber view;  // This spectator's position in the watched room's broadcast
+
+        Room(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private final Selector selector;            // Multiplexes the listening socket and all clients
+    private final ServerSocketChannel acceptor; // The listening socket
+    private final int columns;                  // Board width of every game
+    private final int rows;                     // Board height of every game
+    private final long tickNanos;               // Length of a tick
+    private final ArrayList<Room> rooms = new ArrayList<>(); // Connected clients
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(1024); // Shared by every read
+    private long seed = System.nanoTime();      // Seed of the next game
+    private volatile boolean running;           // Cleared to stop the server
+
+    // Statistics, written by the server thread only
+    private volatile double tickTimeNanos;      // Average time a tick takes
+    private volatile long maxTickTimeNanos;     // Longest tick so far
+    private volatile long ticks;                // Ticks run
+    private volatile int roomCount;             // Connected clients
+
+    /**
+     * Opens the listening socket.
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @param columns the board width of every game
+     * @param rows the board height of every game
+     * @param ticksPerSecond the tick rate of every game
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(int port, int columns, int rows, int ticksPerSecond) throws IOException {
+        this.columns = columns;
+        this.rows = rows;
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port));
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return acceptor.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        long nextTick = System.nanoTime() + tickNanos;
+        try {
+            while (running) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 1_000_000) {
+                    selector.select(wait / 1_000_000);
+                } else {
+                    selector.selectNow();
+                }
+                handleKeys();
+
+                long now = System.nanoTime();
+                if (now >= nextTick) {
+                    tick();
+                    recordTick(System.nanoTime() - now);
+                    nextTick += tickNanos;
+                    if (now - nextTick > MAX_LATE_TICKS * tickNanos) {
+                        nextTick = now + tickNanos; // Too far behind, skip the missed ticks
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Game server stopped: " + e);
+        } finally {
+            for (Room room : rooms) {
+                closeQuietly(room);
+            }
+            rooms.clear();
+            roomCount = 0;
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // The server is stopping anyway
+            }
+        }
+    }
+
+    /**
+     * Handles the sockets the selector found ready.
+     */
+    private void handleKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept();
+            } else {
+                Room room = (Room) key.attachment();
+                if (key.isReadable()) {
+                    read(room);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write(room);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts a new client and gives it a room.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = acceptor.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true); // Steps are tiny and must not wait for more data
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Room room = new Room(channel, key);
+        key.attach(room);
+        rooms.add(room);
+        roomCount = rooms.size();
+    }
+
+    /**
+     * Reads the commands a client sent.
+     */
+    private void read(Room room) {
+        readBuffer.clear();
+        int read;
+        try {
+            read = room.channel.read(readBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(room); // The client left
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte command = readBuffer.get();
+            if (command == Protocol.NEW_GAME) {
+                room.newGame = true;
+                room.input.clear();
+            } else if (command == Protocol.WATCH) {
+                room.watch = true;
+            } else if (command == 'U' || command == 'D' || command == 'L' || command == 'R') {
+                room.input.offer((char) command); // Dropped if the client sends faster than the tick rate
+            }
+        }
+    }
+
+    /**
+     * Runs one tick of every room and sends each room's messages.
+     */
+    private void tick() {
+        for (int i = rooms.size() - 1; i >= 0; i--) {
+            Room room = rooms.get(i);
+            if (room.watch) {
+                room.watch = !startWatching(room); // Asked again next tick while nobody plays
+            }
+            if (room.newGame) {
+                room.newGame = false;
+                stopWatching(room); // Playing again, no longer a spectator
+                room.engine = new GameEngine(columns, rows, seed++);
+                int size = Protocol.gameSize(room.engine);
+                if (room.output.remaining() < size) {
+                    room.output = grow(room.output, size);
+                }
+                Protocol.writeGame(room.engine, room.output);
+                if (room.broadcast != null) {
+                    room.broadcast.restart(room.engine);
+                }
+            } else if (room.engine != null && room.engine.isRunning()) {
+                room.engine.step(room.input.nextTurn(room.engine.getSnake().direction));
+                if (room.output.remaining() < Protocol.MAX_STEP_SIZE) {
+                    close(room); // The client stopped reading
+                    continue;
+                }
+                Protocol.writeStep(room.engine, room.output);
+                if (room.broadcast != null) {
+                    room.broadcast.publish();
+                }
+            }
+            if (room.output.position() > 0) {
+                write(room);
+            }
+        }
+        // Spectators after every player, so they get this tick's steps
+        for (int i = rooms.size() - 1; i >= 0; i--) {
+            Room room = rooms.get(i);
+            if (room.view != null && !relay(room)) {
+                close(room);
+            }
+        }
+        ticks++;
+    }
+
+    /**
+     * Makes a room a spectator of the oldest room with a game, if there is
+     * one other than itself.
+     *
+     * @return true if the room now watches a game
+     */
+    private boolean startWatching(Room room) {
+        for (Room player : rooms) {
+            if (player != room && player.engine != null && player.watched == null) {
+                if (player.broadcast == null) {
+                    player.broadcast = new Broadcaster(player.engine, 0);
+                }
+                stopWatching(room);
+                room.engine = null; // Watching, no longer playing
+                room.watched = player;
+                room.view = player.broadcast.subscribe();
+                player.spectators++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes a room off the broadcast it watches. The watched room stops
+     * broadcasting when its last spectator leaves.
+     */
+    private static void stopWatching(Room room) {
+        Room player = room.watched;
+        if (player != null && --player.spectators == 0) {
+            player.broadcast = null;
+        }
+        room.watched = null;
+        room.view = null;
+    }
+
+    /**
+     * Sends a spectator the messages published since the last tick.
+     *
+     * @return false if the spectator must be disconnected: the game it
+     *         watched is gone, or it stopped reading
+     */
+    private boolean relay(Room room) {
+        if (room.watched.closed || room.watched.engine == null || room.output.position() > OUTPUT_CAPACITY) {
+            return false;
+        }
+        room.view.relay(room.output);
+        int waiting = room.view.getWaiting();
+        if (waiting > room.output.remaining()) {
+            room.output = grow(room.output, waiting); // A keyframe must fit in one go
+            room.view.relay(room.output);
+        }
+        if (room.output.position() > 0) {
+            write(room);
+        }
+        return true;
+    }
+
+    /**
+     * Sends as much of a room's messages as the socket takes, and asks the
+     * selector to report when the rest can be sent.
+     */
+    private void write(Room room) {
+        room.output.flip();
+        try {
+            room.channel.write(room.output);
+        } catch (IOException e) {
+            close(room);
+            return;
+        }
+        room.output.compact();
+        room.key.interestOps(room.output.position() > 0
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Returns a buffer with the content of another and room for more bytes.
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int bytes) {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.position() + Math.max(bytes, OUTPUT_CAPACITY));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * Removes a room and closes its connection.
+     */
+    private void close(Room room) {
+        closeQuietly(room);
+        stopWatching(room);
+        rooms.remove(room);
+        roomCount = rooms.size();
+    }
+
+    /**
+     * Closes a room's connection, ignoring errors.
+     */
+    private static void closeQuietly(Room room) {
+        room.closed = true;
+        room.key.cancel();
+        try {
+            room.channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done with this client
+        }
+    }
+
+    /**
+     * Updates the tick statistics.
+     */
+    private void recordTick(long nanos) {
+        tickTimeNanos += (nanos - tickTimeNanos) * SMOOTHING;
+        if (nanos > maxTickTimeNanos) {
+            maxTickTimeNanos = nanos;
+        }
+    }
+
+    /**
+     * Stops the server. The server thread closes every connection.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        acceptor.close();
+    }
+
+    /**
+     * @return the average time a tick of all rooms takes, in nanoseconds
+     */
+    public double getTickTimeNanos() {
+        return tickTimeNanos;
+    }
+
+    /**
+     * @return the longest time a tick took, in nanoseconds
+     */
+    public long getMaxTickTimeNanos() {
+        return maxTickTimeNanos;
+    }
+
+    /**
+     * @return the number of ticks run
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getRoomCount() {
+        return roomCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rooms=%d tick=%.3fms max=%.3fms ticks=%d",
+                roomCount, tickTimeNanos / 1e6, maxTickTimeNanos / 1e6, ticks);
+    }
+
+    /**
+     * Runs a server until the process is killed, printing its statistics
+     * every ten seconds.
+     *
+     * @param args the port, optional
+     * @throws Exception if the server cannot start
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Protocol.DEFAULT_PORT;
+        GameServer server = new GameServer(port,
+                Integer.getInteger("hungernagini.columns", Main.SCREEN_WIDTH / Map.UNIT_SIZE),
+                Integer.getInteger("hungernagini.rows", Main.SCREEN_HEIGHT / Map.UNIT_SIZE),
+                Integer.getInteger("hungernagini.tickRate", 1000 / Main.DELAY));
+        Thread thread = new Thread(server, "Hunger Nagini server");
+        thread.start();
+        System.out.println("Hunger Nagini server listening on port " + server.getPort());
+        while (thread.isAlive()) {
+            thread.join(10_000);
+            System.out.println(server);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * The GameStats class aggregates the results of many "Hunger Nagini" games.
+ * Results are folded in one at a time, so memory stays constant however many games are played.
+ */
+package hungernagini;
+
+/**
+ * GameStats keeps counts, sums and extremes of score, length and ticks, and
+ * a Histogram of each for percentiles; the histograms are a fixed few
+ * kilobytes whatever the number of games. Every game is counted as won, a
+ * crash into the wall, a crash into the snake itself, or stopped while still
+ * running. Partial results from different threads are merged with combine().
+ */
+public class GameStats {
+
+    private long games;       // Number of games recorded
+    private long wins;        // Games that ended with the board full
+    private long wallDeaths;  // Games that ended with the head leaving the board
+    private long selfDeaths;  // Games that ended with the head running into the body
+    private long unfinished;  // Games still running when they were recorded, stopped at a tick limit
+    private long scoreSum;    // Sum of the final scores
+    private int scoreMin = Integer.MAX_VALUE; // Lowest final score
+    private int scoreMax;     // Highest final score
+    private long lengthSum;   // Sum of the final snake lengths
+    private int lengthMax;    // Longest final snake
+    private long tickSum;     // Sum of the ticks played
+    private long tickMax;     // Longest game in ticks
+    private final Histogram scores = new Histogram();  // Distribution of the final scores
+    private final Histogram lengths = new Histogram(); // Distribution of the final lengths
+    private final Histogram ticks = new Histogram();   // Distribution of the game lengths in ticks
+
+    /**
+     * Records the result of a finished game.
+     *
+     * @param game the game to record
+     */
+    public void accept(GameEngine game) {
+        games++;
+        Snake snake = game.getSnake();
+        if (game.isWon()) {
+            wins++;
+        } else if (game.isRunning()) {
+            unfinished++;
+        } else if (snake.isHitWall()) {
+            wallDeaths++;
+        } else if (snake.isHitSelf()) {
+            selfDeaths++;
+        }
+        int score = game.getScore();
+        scoreSum += score;
+        scoreMin = Math.min(scoreMin, score);
+        scoreMax = Math.max(scoreMax, score);
+        lengthSum += game.getLength();
+        lengthMax = Math.max(lengthMax, game.getLength());
+        tickSum += game.getTicks();
+        tickMax = Math.max(tickMax, game.getTicks());
+        scores.record(score);
+        lengths.record(game.getLength());
+        ticks.record(game.getTicks());
+    }
+
+    /**
+     * Adds the results recorded by another instance to this one.
+     *
+     * @param other the results to add
+     * @return this instance
+     */
+    public GameStats combine(GameStats other) {
+        games += other.games;
+        wins += other.wins;
+        wallDeaths += other.wallDeaths;
+        selfDeaths += other.selfDeaths;
+        unfinished += other.unfinished;
+        scoreSum += other.scoreSum;
+        scoreMin = Math.min(scoreMin, other.scoreMin);
+        scoreMax = Math.max(scoreMax, other.scoreMax);
+        lengthSum += other.lengthSum;
+        lengthMax = Math.max(lengthMax, other.lengthMax);
+        tickSum += other.tickSum;
+        tickMax = Math.max(tickMax, other.tickMax);
+        scores.add(other.scores);
+        lengths.add(other.lengths);
+        ticks.add(other.ticks);
+        return this;
+    }
+
+    /**
+     * Forgets every game recorded, so the instance can collect another batch.
+     */
+    public void clear() {
+        games = 0;
+        wins = 0;
+        wallDeaths = 0;
+        selfDeaths = 0;
+        unfinished = 0;
+        scoreSum = 0;
+        scoreMin = Integer.MAX_VALUE;
+        scoreMax = 0;
+        lengthSum = 0;
+        lengthMax = 0;
+        tickSum = 0;
+        tickMax = 0;
+        scores.clear();
+        lengths.clear();
+        ticks.clear();
+    }
+
+    /**
+     * @return the number of games recorded
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * @return the number of games won
+     */
+    public long getWins() {
+        return wins;
+    }
+
+    /**
+     * @return the number of games lost by running into the wall
+     */
+    public long getWallDeaths() {
+        return wallDeaths;
+    }
+
+    /**
+     * @return the number of games lost by running into the snake's own body
+     */
+    public long getSelfDeaths() {
+        return selfDeaths;
+    }
+
+    /**
+     * @return the number of games stopped at the tick limit
+     */
+    public long getUnfinished() {
+        return unfinished;
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return a final score at least as high as that share of the games, within 1/16
+     */
+    public long getScorePercentile(double percentile) {
+        return scores.getPercentile(percentile);
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return a final length at least as long as that share of the games, within 1/16
+     */
+    public long getLengthPercentile(double percentile) {
+        return lengths.getPercentile(percentile);
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return a number of ticks at least as large as that share of the games, within 1/16
+     */
+    public long getTickPercentile(double percentile) {
+        return ticks.getPercentile(percentile);
+    }
+
+    /**
+     * @return the average final score
+     */
+    public double getMeanScore() {
+        return games == 0 ? 0 : (double) scoreSum / games;
+    }
+
+    /**
+     * @return the lowest final score
+     */
+    public int getMinScore() {
+        return games == 0 ? 0 : scoreMin;
+    }
+
+    /**
+     * @return the highest final score
+     */
+    public int getMaxScore() {
+        return scoreMax;
+    }
+
+    /**
+     * @return the average final snake length
+     */
+    public double getMeanLength() {
+        return games == 0 ? 0 : (double) lengthSum / games;
+    }
+
+    /**
+     * @return the longest final snake
+     */
+    public int getMaxLength() {
+        return lengthMax;
+    }
+
+    /**
+     * @return the number of ticks played over all games
+     */
+    public long getTotalTicks() {
+        return tickSum;
+    }
+
+    /**
+     * @return the average number of ticks per game
+     */
+    public double getMeanTicks() {
+        return games == 0 ? 0 : (double) tickSum / games;
+    }
+
+    /**
+     * @return the number of ticks of the longest game
+     */
+    public long getMaxTicks() {
+        return tickMax;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("games=%d wins=%d wall=%d self=%d unfinished=%d"
+                + " score(mean=%.2f min=%d p50=%d p90=%d p99=%d max=%d)"
+                + " length(mean=%.2f p50=%d max=%d) ticks(mean=%.1f p50=%d p99=%d max=%d)",
+                games, wins, wallDeaths, selfDeaths, unfinished,
+                getMeanScore(), getMinScore(), getScorePercentile(50), getScorePercentile(90), getScorePercentile(99), scoreMax,
+                getMeanLength(), getLengthPercentile(50), lengthMax,
+                getMeanTicks(), getTickPercentile(50), getTickPercentile(99), tickMax);
+    }
+}
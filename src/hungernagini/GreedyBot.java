@@ -0,0 +1,55 @@
+/*
+ * The GreedyBot class is a simple computer player for the "Hunger Nagini" game.
+ * It heads straight for the apple and only looks one cell ahead to avoid crashing.
+ */
+package hungernagini;
+
+/**
+ * GreedyBot picks, among the moves that do not crash on the next tick, the
+ * one that brings the head closest to the target cell.
+ */
+public class GreedyBot implements Bot {
+
+    private static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'}; // Candidate moves, in tie-break order
+
+    @Override
+    public char nextDirection(GameEngine game) {
+        return nextDirection(game.getSnake(), game.getApple().getCell());
+    }
+
+    /**
+     * Chooses a direction for a snake heading to a target cell.
+     *
+     * @param snake the snake to steer
+     * @param target the packed cell index to head for
+     * @return 'U', 'D', 'L' or 'R'
+     */
+    public char nextDirection(Snake snake, int target) {
+        OccupancyGrid grid = snake.grid;
+        int columns = grid.getColumns();
+        int head = snake.body.headCell();
+        int headX = head % columns;
+        int headY = head / columns;
+        int targetX = target % columns;
+        int targetY = target / columns;
+
+        char best = snake.direction; // Keep going if every move crashes
+        int bestDistance = Integer.MAX_VALUE;
+        for (char direction : DIRECTIONS) {
+            if (Snake.isReverse(snake.direction, direction)) {
+                continue; // The snake cannot turn back into its neck
+            }
+            int x = headX + Snake.dx(direction);
+            int y = headY + Snake.dy(direction);
+            if (!grid.inBounds(x, y) || grid.isOccupied(grid.cellOf(x, y))) {
+                continue; // This move crashes
+            }
+            int distance = Math.abs(targetX - x) + Math.abs(targetY - y);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = direction;
+            }
+        }
+        return best;
+    }
+}
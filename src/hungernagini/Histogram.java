@@ -0,0 +1,160 @@
+/*
+ * The Histogram class records the distribution of a measurement in the "Hunger Nagini" game,
+ * such as tick or paint durations, in constant memory and without allocating.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+
+/**
+ * Histogram counts values in log-linear buckets: every power of two is cut
+ * into SUB_COUNT equal buckets, so a value is known to within 1/SUB_COUNT of
+ * itself whatever its size, and values below SUB_COUNT are exact. Recording
+ * is a few shifts and an array increment.
+ * <p>
+ * There is one writer thread. Other threads may read at any time and see a
+ * slightly stale or mixed picture, which is fine for monitoring; reset()
+ * only asks the writer to clear the counts on its next record().
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 4;              // log2 of the buckets per power of two
+    private static final int SUB_COUNT = 1 << SUB_BITS; // Buckets per power of two, values are within 6.25%
+    private static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS; // Enough for any non-negative long
+
+    private final long[] counts = new long[BUCKETS]; // Values recorded in each bucket
+    private volatile long count;         // Number of values recorded
+    private volatile long sum;           // Sum of the values recorded
+    private volatile long max;           // Largest value recorded
+    private volatile boolean resetRequested; // Set by reset(), cleared by the writer
+
+    /**
+     * Adds a value. Called by the writer thread only.
+     *
+     * @param value the value, negative values count as 0
+     */
+    public void record(long value) {
+        if (resetRequested) {
+            clear();
+        }
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Asks for the counts to be cleared before the next value is recorded.
+     */
+    public void reset() {
+        resetRequested = true;
+    }
+
+    /**
+     * Adds the values recorded by another histogram, to merge the
+     * histograms of several threads. Called by the writer thread only, while
+     * nothing writes to the other one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(Histogram other) {
+        if (resetRequested) {
+            clear();
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    /**
+     * Clears the counts at once. Called by the writer thread only; other
+     * threads use reset().
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+        resetRequested = false;
+    }
+
+    /**
+     * @return the bucket that holds a value
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value; // Exact
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * @return the largest value that falls into a bucket
+     */
+    private static long highestValueIn(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        return ((long) (SUB_COUNT + (index & (SUB_COUNT - 1)) + 1) << shift) - 1;
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return a value at least as large as that share of the recorded values, 0 if there are none
+     */
+    public long getPercentile(double percentile) {
+        long total = count;
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the average value, 0 if there are none
+     */
+    public double getMean() {
+        long n = count;
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    /**
+     * @return the largest value recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50=%d p99=%d max=%d",
+                count, getMean(), getPercentile(50), getPercentile(99), max);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The InputQueue class carries direction keys from the event thread to the game loop
+ * of the "Hunger Nagini" game without locking.
+ */
+package hungernagini;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InputQueue is a bounded single-producer single-consumer ring of direction
+ * commands. Only the event thread may call offer() and only the loop thread
+ * may call poll() or nextTurn(). Each side publishes its counter with a
+ * lazySet after touching the slot, which is enough to order the handover.
+ */
+public class InputQueue {
+
+    private final char[] commands;  // Ring storage, its length is a power of two
+    private final long[] offeredAt; // System.nanoTime of each command's offer, same slots as commands
+    private final int mask;         // commands.length - 1
+    private final AtomicLong head = new AtomicLong(); // Next slot to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // Next slot to write, written by the producer
+    private long lastOfferedAt;     // Offer time of the command poll() returned last, read by the consumer
+
+    /**
+     * Creates a queue.
+     *
+     * @param capacity the number of pending commands, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        commands = new char[size];
+        offeredAt = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a command. Called by the producer only.
+     *
+     * @param direction 'U', 'D', 'L' or 'R'
+     * @return false if the queue is full and the command was dropped
+     */
+    public boolean offer(char direction) {
+        long t = tail.get();
+        if (t - head.get() == commands.length) {
+            return false; // The player is far ahead of the game, drop the key
+        }
+        commands[(int) t & mask] = direction;
+        offeredAt[(int) t & mask] = System.nanoTime();
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest command. Called by the consumer only.
+     *
+     * @return the command, or 0 if the queue is empty
+     */
+    public char poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return 0;
+        }
+        char direction = commands[(int) h & mask];
+        lastOfferedAt = offeredAt[(int) h & mask];
+        head.lazySet(h + 1);
+        return direction;
+    }
+
+    /**
+     * Takes the next command that actually turns a snake moving in the given
+     * direction. Commands that repeat the direction or reverse it are dropped,
+     * so a quick "up, left" while moving right becomes two turns on two ticks.
+     * Called by the consumer only.
+     *
+     * @param current the direction the snake is moving in
+     * @return the new direction, or current if no turn is queued
+     */
+    public char nextTurn(char current) {
+        char direction;
+        while ((direction = poll()) != 0) {
+            if (direction != current && !Snake.isReverse(current, direction)) {
+                return direction;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Tells when the command returned last by poll() or nextTurn() was
+     * offered. Called by the consumer only.
+     *
+     * @return its System.nanoTime at offer()
+     */
+    public long getLastOfferedAt() {
+        return lastOfferedAt;
+    }
+
+    /**
+     * Drops every pending command. Only safe while the consumer is not running.
+     */
+    public void clear() {
+        head.set(tail.get());
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * The Instrumentation class measures the "Hunger Nagini" game while it runs.
+ * Tick and paint durations, input latency, apple placement attempts and allocation per tick
+ * are kept in histograms, emitted as JFR events where the JVM has JFR, and published through JMX.
+ */
+package hungernagini;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation is called around the tick and the paint and whenever an
+ * apple is placed or a key turns the snake. Recording is a histogram update
+ * and, only while a JFR recording has the event enabled, one event object,
+ * so an instrumented tick allocates nothing when nobody is listening.
+ * <p>
+ * Tick, apple and input measurements come from the loop thread, paint
+ * measurements from the event thread; each histogram has one writer.
+ * Start a recording with -XX:StartFlightRecording or from JDK Mission
+ * Control to see the events; the MBean is "hungernagini:type=Instrumentation".
+ * Events and allocation counts begin with start(), which Main calls once
+ * the first frame is on screen, since setting them up delays it. The events
+ * live in JfrEvents, loaded by name only if jdk.jfr is present, so the game
+ * still runs on a Java 8 JVM without it; the histograms work either way.
+ */
+public class Instrumentation implements InstrumentationMXBean {
+
+    public static final String OBJECT_NAME = "hungernagini:type=Instrumentation"; // JMX name of the MBean
+
+    /**
+     * Receives the measurements as JFR events. Implemented by JfrEvents,
+     * the one class that refers to jdk.jfr.
+     */
+    interface Events {
+
+        /**
+         * Starts timing a tick. Called by the loop thread.
+         */
+        void beginTick();
+
+        /**
+         * Ends the tick started with beginTick().
+         *
+         * @param allocated the bytes the loop thread allocated during the tick
+         */
+        void endTick(long allocated);
+
+        /**
+         * Starts timing a paint. Called by the event thread.
+         */
+        void beginPaint();
+
+        /**
+         * Ends the paint started with beginPaint().
+         *
+         * @param area the number of pixels painted
+         */
+        void endPaint(int area);
+
+        /**
+         * Reports the placement of an apple.
+         *
+         * @param attempts the cells looked at to find a free one
+         * @param occupied the cells covered by snakes
+         */
+        void appleSpawned(int attempts, int occupied);
+
+        /**
+         * Reports a key press taken by a tick.
+         *
+         * @param direction the direction the key turned the snake to
+         * @param latency the nanoseconds from the key press to the tick
+         */
+        void inputTaken(char direction, long latency);
+    }
+
+    private static final String JFR_EVENTS = "hungernagini.JfrEvents"; // Loaded by name, so nothing links to jdk.jfr otherwise
+
+    private final Histogram tickNanos = new Histogram();      // Tick durations
+    private final Histogram paintNanos = new Histogram();     // Paint durations
+    private final Histogram inputNanos = new Histogram();     // Key press to tick
+    private final Histogram appleAttempts = new Histogram();  // Cells tried per apple
+    private final Histogram tickAllocated = new Histogram();  // Bytes allocated per tick
+
+    private com.sun.management.ThreadMXBean allocation; // Per-thread allocation counter, null if unsupported or not started
+    private Events events;           // JFR events, null if jdk.jfr is missing or not started
+    private volatile boolean started; // Set by start(), after which events and allocation are recorded
+    private com.sun.management.ThreadMXBean tickCounter; // The loop thread's copy of allocation, taken at a tick's start
+    private long tickStart;          // When the current tick began
+    private long tickStartAllocated; // Bytes the loop thread had allocated when the tick began
+    private long paintStart;         // When the current paint began
+
+    /**
+     * Creates the histograms. Durations are recorded from the start; JFR
+     * events and allocation only once start() has been called.
+     */
+    public Instrumentation() {
+    }
+
+    /**
+     * Loads the JFR event types and the allocation counter, which are slow
+     * to set up, and starts recording them. Events are emitted if the JVM
+     * has jdk.jfr, allocation is measured if it can count bytes per thread.
+     * Main calls it after the first frame.
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        events = loadEvents();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean counter = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            counter = (com.sun.management.ThreadMXBean) threads;
+            if (!counter.isThreadAllocatedMemorySupported() || !counter.isThreadAllocatedMemoryEnabled()) {
+                counter = null;
+            }
+        }
+        allocation = counter;
+        started = true; // Publishes allocation to the loop thread
+    }
+
+    /**
+     * @return the JFR events, or null if this JVM has no jdk.jfr
+     */
+    private static Events loadEvents() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Events) Class.forName(JFR_EVENTS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // No JFR here, or it cannot start: the histograms still work
+        }
+    }
+
+    /**
+     * Publishes the measurements on the platform MBean server.
+     *
+     * @throws JMException if the MBean cannot be registered, for example twice
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Marks the start of a tick. Called by the loop thread.
+     */
+    public void beginTick() {
+        if (started) {
+            if (events != null) {
+                events.beginTick();
+            }
+            tickCounter = allocation;
+        }
+        tickStartAllocated = allocatedBytes();
+        tickStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the tick started with beginTick().
+     */
+    public void endTick() {
+        tickNanos.record(System.nanoTime() - tickStart);
+        long allocated = allocatedBytes() - tickStartAllocated;
+        if (tickCounter != null) {
+            tickAllocated.record(allocated);
+        }
+        if (started && events != null) {
+            events.endTick(allocated);
+        }
+    }
+
+    /**
+     * Marks the start of a paint. Called by the event thread.
+     */
+    public void beginPaint() {
+        if (started && events != null) {
+            events.beginPaint();
+        }
+        paintStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the paint started with beginPaint().
+     *
+     * @param area the number of pixels painted
+     */
+    public void endPaint(int area) {
+        paintNanos.record(System.nanoTime() - paintStart);
+        if (started && events != null) {
+            events.endPaint(area);
+        }
+    }
+
+    /**
+     * Records the placement of an apple. Called by the loop thread.
+     *
+     * @param attempts the cells looked at to find a free one
+     * @param occupied the cells covered by snakes
+     */
+    public void appleSpawned(int attempts, int occupied) {
+        appleAttempts.record(attempts);
+        if (started && events != null) {
+            events.appleSpawned(attempts, occupied);
+        }
+    }
+
+    /**
+     * Records a key press taken by a tick. Called by the loop thread.
+     *
+     * @param direction the direction the key turned the snake to
+     * @param pressedAt the System.nanoTime of the key press
+     */
+    public void inputTaken(char direction, long pressedAt) {
+        long latency = System.nanoTime() - pressedAt;
+        inputNanos.record(latency);
+        if (started && events != null) {
+            events.inputTaken(direction, latency);
+        }
+    }
+
+    /**
+     * @return the bytes the current thread has allocated, 0 if unknown
+     */
+    private long allocatedBytes() {
+        return tickCounter == null ? 0 : tickCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Writes the main figures into an array of lines, for the debug overlay.
+     *
+     * @param lines receives one line per measurement, at least 4 long
+     */
+    public void describe(String[] lines) {
+        lines[0] = String.format("tick  mean %6.1f  p99 %6.1f  max %7.1f us",
+                getTickMeanMicros(), getTickP99Micros(), getTickMaxMicros());
+        lines[1] = String.format("paint mean %6.1f  p99 %6.1f  max %7.1f us",
+                getPaintMeanMicros(), getPaintP99Micros(), getPaintMaxMicros());
+        lines[2] = String.format("input mean %6.1f  p99 %6.1f ms  apple tries %.2f/%d",
+                getInputLatencyMeanMicros() / 1000, getInputLatencyP99Micros() / 1000,
+                getAppleAttemptsMean(), getAppleAttemptsMax());
+        lines[3] = String.format("alloc/tick %.0f B (max %d)  gc %d / %d ms",
+                getTickAllocatedBytesMean(), getTickAllocatedBytesMax(), getGcCount(), getGcTimeMillis());
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickNanos.getCount();
+    }
+
+    @Override
+    public double getTickMeanMicros() {
+        return tickNanos.getMean() / 1000;
+    }
+
+    @Override
+    public double getTickP99Micros() {
+        return tickNanos.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getTickMaxMicros() {
+        return tickNanos.getMax() / 1000.0;
+    }
+
+    @Override
+    public long getPaintCount() {
+        return paintNanos.getCount();
+    }
+
+    @Override
+    public double getPaintMeanMicros() {
+        return paintNanos.getMean() / 1000;
+    }
+
+    @Override
+    public double getPaintP99Micros() {
+        return paintNanos.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getPaintMaxMicros() {
+        return paintNanos.getMax() / 1000.0;
+    }
+
+    @Override
+    public double getInputLatencyMeanMicros() {
+        return inputNanos.getMean() / 1000;
+    }
+
+    @Override
+    public double getInputLatencyP99Micros() {
+        return inputNanos.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getAppleAttemptsMean() {
+        return appleAttempts.getMean();
+    }
+
+    @Override
+    public long getAppleAttemptsMax() {
+        return appleAttempts.getMax();
+    }
+
+    @Override
+    public double getTickAllocatedBytesMean() {
+        return tickAllocated.getMean();
+    }
+
+    @Override
+    public long getTickAllocatedBytesMax() {
+        return tickAllocated.getMax();
+    }
+
+    @Override
+    public long getGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    @Override
+    public long getGcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    @Override
+    public void reset() {
+        tickNanos.reset();
+        paintNanos.reset();
+        inputNanos.reset();
+        appleAttempts.reset();
+        tickAllocated.reset();
+    }
+}
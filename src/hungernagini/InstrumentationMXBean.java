@@ -0,0 +1,97 @@
+/*
+ * The InstrumentationMXBean interface is the JMX view of the "Hunger Nagini" runtime
+ * measurements, readable from JConsole or any other JMX client.
+ */
+package hungernagini;
+
+/**
+ * InstrumentationMXBean exposes the histograms kept by Instrumentation.
+ * Durations are in microseconds.
+ */
+public interface InstrumentationMXBean {
+
+    /**
+     * @return the number of ticks measured
+     */
+    long getTickCount();
+
+    /**
+     * @return the average tick duration
+     */
+    double getTickMeanMicros();
+
+    /**
+     * @return the 99th percentile of the tick duration
+     */
+    double getTickP99Micros();
+
+    /**
+     * @return the longest tick
+     */
+    double getTickMaxMicros();
+
+    /**
+     * @return the number of paints measured
+     */
+    long getPaintCount();
+
+    /**
+     * @return the average paint duration
+     */
+    double getPaintMeanMicros();
+
+    /**
+     * @return the 99th percentile of the paint duration
+     */
+    double getPaintP99Micros();
+
+    /**
+     * @return the longest paint
+     */
+    double getPaintMaxMicros();
+
+    /**
+     * @return the average time from a key press to the tick that turned the snake
+     */
+    double getInputLatencyMeanMicros();
+
+    /**
+     * @return the 99th percentile of the input latency
+     */
+    double getInputLatencyP99Micros();
+
+    /**
+     * @return the average number of cells tried to place an apple
+     */
+    double getAppleAttemptsMean();
+
+    /**
+     * @return the most cells tried to place one apple
+     */
+    long getAppleAttemptsMax();
+
+    /**
+     * @return the average number of bytes the loop thread allocates in a tick
+     */
+    double getTickAllocatedBytesMean();
+
+    /**
+     * @return the most bytes the loop thread allocated in one tick
+     */
+    long getTickAllocatedBytesMax();
+
+    /**
+     * @return the number of garbage collections since the start, over all collectors
+     */
+    long getGcCount();
+
+    /**
+     * @return the time spent in garbage collection since the start, in milliseconds
+     */
+    long getGcTimeMillis();
+
+    /**
+     * Clears every histogram.
+     */
+    void reset();
+}
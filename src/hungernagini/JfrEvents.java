@@ -0,0 +1,149 @@
+/*
+ * The JfrEvents class emits the "Hunger Nagini" measurements as JDK Flight Recorder events.
+ * It is the only class that refers to jdk.jfr, and is loaded only when the JVM has it.
+ */
+package hungernagini;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JfrEvents creates an event object only while a recording has its type
+ * enabled, so nothing is allocated when nobody is listening. Instrumentation
+ * creates it by reflection in start(), which keeps a JVM without jdk.jfr,
+ * such as an older Java 8, able to load and run the game. Loading the first
+ * event type starts JFR, which takes a few hundred milliseconds; that also
+ * happens in the constructor, so in start().
+ * <p>
+ * Tick, apple and input events come from the loop thread, paint events from
+ * the event thread; the tick and paint fields each have one writer.
+ */
+final class JfrEvents implements Instrumentation.Events {
+
+    /**
+     * One tick of the game loop.
+     */
+    @Name("hungernagini.Tick")
+    @Label("Tick")
+    @Category("Hunger Nagini")
+    @Description("One logic tick of the game loop")
+    static class TickEvent extends Event {
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated; // Bytes the loop thread allocated during the tick
+    }
+
+    /**
+     * One call to paintComponent.
+     */
+    @Name("hungernagini.Paint")
+    @Label("Paint")
+    @Category("Hunger Nagini")
+    @Description("One paint of the game panel")
+    static class PaintEvent extends Event {
+
+        @Label("Area")
+        int area; // Painted pixels, width times height of the clip
+    }
+
+    /**
+     * An apple put on the board.
+     */
+    @Name("hungernagini.AppleSpawn")
+    @Label("Apple Spawn")
+    @Category("Hunger Nagini")
+    @Description("An apple placed on a free cell")
+    static class AppleSpawnEvent extends Event {
+
+        @Label("Attempts")
+        int attempts; // Cells looked at before a free one was found
+
+        @Label("Occupied Cells")
+        int occupied; // Cells covered by snakes at the time
+    }
+
+    /**
+     * A key press that turned the snake.
+     */
+    @Name("hungernagini.Input")
+    @Label("Input")
+    @Category("Hunger Nagini")
+    @Description("A key press taken by a tick")
+    static class InputEvent extends Event {
+
+        @Label("Direction")
+        char direction; // 'U', 'D', 'L' or 'R'
+
+        @Label("Latency")
+        @Timespan
+        long latency; // Nanoseconds from the key press to the tick
+    }
+
+    private final EventType tickType = EventType.getEventType(TickEvent.class);   // Tells if ticks are recorded
+    private final EventType paintType = EventType.getEventType(PaintEvent.class); // Tells if paints are recorded
+    private final EventType appleType = EventType.getEventType(AppleSpawnEvent.class); // Tells if apples are recorded
+    private final EventType inputType = EventType.getEventType(InputEvent.class); // Tells if inputs are recorded
+    private TickEvent tickEvent;   // Event of the current tick, null while JFR is not recording it
+    private PaintEvent paintEvent; // Event of the current paint, null while JFR is not recording it
+
+    @Override
+    public void beginTick() {
+        if (tickType.isEnabled()) {
+            tickEvent = new TickEvent();
+            tickEvent.begin();
+        }
+    }
+
+    @Override
+    public void endTick(long allocated) {
+        if (tickEvent != null) {
+            tickEvent.allocated = allocated;
+            tickEvent.commit();
+            tickEvent = null;
+        }
+    }
+
+    @Override
+    public void beginPaint() {
+        if (paintType.isEnabled()) {
+            paintEvent = new PaintEvent();
+            paintEvent.begin();
+        }
+    }
+
+    @Override
+    public void endPaint(int area) {
+        if (paintEvent != null) {
+            paintEvent.area = area;
+            paintEvent.commit();
+            paintEvent = null;
+        }
+    }
+
+    @Override
+    public void appleSpawned(int attempts, int occupied) {
+        if (appleType.isEnabled()) {
+            AppleSpawnEvent event = new AppleSpawnEvent();
+            event.attempts = attempts;
+            event.occupied = occupied;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void inputTaken(char direction, long latency) {
+        if (inputType.isEnabled()) {
+            InputEvent event = new InputEvent();
+            event.direction = direction;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * The Leaderboard class keeps the results of finished "Hunger Nagini" games.
+ * Every game is appended to a checksummed log file, and the best scores overall and per player
+ * are kept in memory so the menu can show them at once.
+ */
+package hungernagini;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Leaderboard stores games in an append-only log:
+ * <pre>
+ *   header   MAGIC, VERSION
+ *   record   payload length, payload, CRC32 of the payload
+ *   payload  time, seed, ticks (longs), score, length (ints),
+ *            player name length (short), player name (UTF-8)
+ * </pre>
+ * Opening the log maps it into memory and rebuilds the index, the TOP_SIZE
+ * best games and each player's best game, in one pass. A record with a bad
+ * checksum or cut short by a crash ends the log; it is truncated there.
+ * <p>
+ * Only the games in the index matter once they are recorded, so when the
+ * log holds many more records than the index, a background thread rewrites
+ * it with just those and swaps it in atomically. All public methods may be
+ * called from any thread.
+ */
+public class Leaderboard implements Closeable {
+
+    public static final int TOP_SIZE = 10; // Number of games in the overall top list
+
+    private static final int MAGIC = 0x484E5343;     // "HNSC"
+    private static final int VERSION = 1;            // Bumped when the record layout changes
+    private static final int HEADER_SIZE = 8;        // Magic and version
+    private static final int FIXED_PAYLOAD = 8 * 3 + 4 * 2 + 2; // Payload without the name
+    private static final int MAX_NAME_BYTES = 255;   // Longer names are cut
+    private static final int COMPACT_MIN_RECORDS = 4096; // Smaller logs are never compacted
+    private static final int COMPACT_RATIO = 4;      // Compact when the log has this many times the indexed games
+
+    /**
+     * One recorded game.
+     */
+    public static final class Entry {
+
+        private final String player; // Name of the player
+        private final int score;     // Apples eaten
+        private final int length;    // Final length of the snake
+        private final long ticks;    // Duration of the game in ticks
+        private final long seed;     // Seed of the game, 0 if unknown
+        private final long time;     // When the game ended, in milliseconds since the epoch
+
+        Entry(String player, int score, int length, long ticks, long seed, long time) {
+            this.player = player;
+            this.score = score;
+            this.length = length;
+            this.ticks = ticks;
+            this.seed = seed;
+            this.time = time;
+        }
+
+        /**
+         * @return the name of the player
+         */
+        public String getPlayer() {
+            return player;
+        }
+
+        /**
+         * @return the number of apples eaten
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return the final length of the snake
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the duration of the game in ticks
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * @return the seed of the game, 0 if unknown
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return when the game ended, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+
+    private final Path file;            // The log
+    private FileChannel channel;        // Open for appending, replaced by a compaction
+    private final ByteBuffer record = ByteBuffer.allocate(4 + FIXED_PAYLOAD + MAX_NAME_BYTES + 4); // Record being written
+    private final CRC32 crc = new CRC32(); // Checksum of the record being read or written
+    private final Entry[] top = new Entry[TOP_SIZE];          // Best games, best first
+    private int topCount;                                     // Number of entries in top
+    private final HashMap<String, Entry> best = new HashMap<>(); // Best game of each player
+    private long recordCount;           // Records in the log
+    private boolean compacting;         // True while a compaction is queued or running
+    private boolean closed;             // Set by close(), a running compaction then gives up
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Hunger Nagini leaderboard compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Reused while the log is read, so a run of games by one player decodes the name once
+    private byte[] lastName = new byte[0]; // UTF-8 bytes of the last name decoded
+    private String lastPlayer = "";        // The last name decoded
+
+    /**
+     * Opens a log, creating it if it does not exist, and rebuilds the index.
+     *
+     * @param file the log file
+     * @throws IOException if the file cannot be read or written, or is not a leaderboard log
+     */
+    public Leaderboard(Path file) throws IOException {
+        this.file = file;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(channel);
+        } else {
+            long end = load();
+            if (end < channel.size()) {
+                channel.truncate(end); // Drop the torn record so the next one follows a good one
+            }
+        }
+        channel.position(channel.size());
+        compactIfLarge();
+    }
+
+    /**
+     * Reads every record through a memory mapping and builds the index.
+     *
+     * @return the offset after the last good record
+     */
+    private long load() throws IOException {
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.getInt() != MAGIC) {
+            throw new IOException(file + " is not a leaderboard log");
+        }
+        if (map.getInt() != VERSION) {
+            throw new IOException(file + " has an unsupported version");
+        }
+        ByteBuffer payload = map.duplicate(); // Window over the payload being checked
+        while (map.remaining() >= 4) {
+            int start = map.position();
+            int size = map.getInt();
+            if (size < FIXED_PAYLOAD || size > FIXED_PAYLOAD + MAX_NAME_BYTES || map.remaining() < size + 4) {
+                return start; // Cut short by a crash, or garbage
+            }
+            // Check the payload in place, without copying it
+            payload.limit(map.position() + size);
+            payload.position(map.position());
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != map.getInt(map.position() + size)) {
+                return start;
+            }
+            long time = map.getLong();
+            long seed = map.getLong();
+            long ticks = map.getLong();
+            int score = map.getInt();
+            int length = map.getInt();
+            int nameLength = map.getShort() & 0xFFFF;
+            if (nameLength != size - FIXED_PAYLOAD) {
+                return start;
+            }
+            String player = readName(map, nameLength);
+            if (mayEnterIndex(player, score)) {
+                index(new Entry(player, score, length, ticks, seed, time)); // Most games are not kept, nor allocated
+            }
+            map.getInt(); // The checksum, already verified
+            recordCount++;
+        }
+        return map.position();
+    }
+
+    /**
+     * @return true if a game belongs in the top list or is its player's best so far
+     */
+    private boolean mayEnterIndex(String player, int score) {
+        if (topCount < TOP_SIZE || score > top[TOP_SIZE - 1].score) {
+            return true;
+        }
+        Entry previous = best.get(player);
+        return previous == null || score > previous.score;
+    }
+
+    /**
+     * Decodes a player name, reusing the last one when the bytes match.
+     */
+    private String readName(ByteBuffer in, int length) {
+        int start = in.position();
+        boolean same = length == lastName.length;
+        for (int i = 0; same && i < length; i++) {
+            same = in.get(start + i) == lastName[i];
+        }
+        if (!same) {
+            lastName = new byte[length];
+            in.get(lastName);
+            lastPlayer = new String(lastName, StandardCharsets.UTF_8);
+        } else {
+            in.position(start + length);
+        }
+        return lastPlayer;
+    }
+
+    /**
+     * Records a finished game.
+     *
+     * @param player the name of the player
+     * @param score the number of apples eaten
+     * @param length the final length of the snake
+     * @param ticks the duration of the game in ticks
+     * @param seed the seed of the game, 0 if unknown
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void record(String player, int score, int length, long ticks, long seed) throws IOException {
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, MAX_NAME_BYTES);
+        if (nameLength < name.length) {
+            player = new String(name, 0, nameLength, StandardCharsets.UTF_8); // Stored as cut, so it matches after a reload
+        }
+        Entry entry = new Entry(player, score, length, ticks, seed, System.currentTimeMillis());
+        write(channel, entry);
+        recordCount++;
+        index(entry);
+        compactIfLarge();
+    }
+
+    /**
+     * Appends one record to a channel.
+     */
+    private void write(FileChannel out, Entry entry) throws IOException {
+        byte[] name = entry.player.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, MAX_NAME_BYTES);
+        record.clear();
+        record.putInt(FIXED_PAYLOAD + nameLength);
+        record.putLong(entry.time);
+        record.putLong(entry.seed);
+        record.putLong(entry.ticks);
+        record.putInt(entry.score);
+        record.putInt(entry.length);
+        record.putShort((short) nameLength);
+        record.put(name, 0, nameLength);
+        crc.reset();
+        crc.update(record.array(), 4, FIXED_PAYLOAD + nameLength);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+    }
+
+    /**
+     * Writes the file header.
+     */
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        out.position(0);
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+
+    /**
+     * Adds a game to the top list and the player's best if it belongs there.
+     * An earlier game stays ahead of a later one with the same score.
+     */
+    private void index(Entry entry) {
+        Entry previous = best.get(entry.player);
+        if (previous == null || entry.score > previous.score) {
+            best.put(entry.player, entry);
+        }
+        if (topCount == TOP_SIZE && entry.score <= top[TOP_SIZE - 1].score) {
+            return;
+        }
+        int i = topCount < TOP_SIZE ? topCount++ : TOP_SIZE - 1;
+        while (i > 0 && top[i - 1].score < entry.score) {
+            top[i] = top[i - 1];
+            i--;
+        }
+        top[i] = entry;
+    }
+
+    /**
+     * Queues a compaction when the log has grown well past the index.
+     */
+    private void compactIfLarge() {
+        if (!compacting && recordCount >= COMPACT_MIN_RECORDS && recordCount > (long) COMPACT_RATIO * indexSize()) {
+            compacting = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * @return an upper bound of the number of games in the index
+     */
+    private int indexSize() {
+        return topCount + best.size();
+    }
+
+    /**
+     * Rewrites the log with only the indexed games, oldest first. The new
+     * file is written and synced beside the old one without holding the
+     * lock; games recorded meanwhile are added under the lock just before
+     * the files are swapped.
+     */
+    private void compact() {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            IdentityHashMap<Entry, Boolean> written = new IdentityHashMap<>();
+            writeHeader(out);
+            synchronized (this) {
+                for (Entry entry : indexedEntries()) {
+                    write(out, entry); // Shares the record buffer with record()
+                    written.put(entry, Boolean.TRUE);
+                }
+            }
+            out.force(false); // The slow part, done while games can still be recorded
+
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Entry entry : indexedEntries()) {
+                    if (!written.containsKey(entry)) {
+                        write(out, entry); // Recorded while the file was being written
+                        written.put(entry, Boolean.TRUE);
+                    }
+                }
+                out.force(false);
+                channel.close();
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                recordCount = written.size();
+            }
+        } catch (IOException e) {
+            System.err.println("Leaderboard not compacted: " + e);
+            synchronized (this) {
+                try {
+                    if (!closed && !channel.isOpen()) {
+                        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                        channel.position(channel.size());
+                    }
+                } catch (IOException reopen) {
+                    System.err.println("Leaderboard log lost: " + reopen);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * @return the games in the top list or a player's best, oldest first, each once
+     */
+    private ArrayList<Entry> indexedEntries() {
+        IdentityHashMap<Entry, Boolean> seen = new IdentityHashMap<>();
+        ArrayList<Entry> entries = new ArrayList<>(indexSize());
+        for (int i = 0; i < topCount; i++) {
+            if (seen.put(top[i], Boolean.TRUE) == null) {
+                entries.add(top[i]);
+            }
+        }
+        for (Entry entry : best.values()) {
+            if (seen.put(entry, Boolean.TRUE) == null) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(a.time, b.time));
+        return entries;
+    }
+
+    /**
+     * @return the number of games in the top list
+     */
+    public synchronized int getTopCount() {
+        return topCount;
+    }
+
+    /**
+     * @param rank a rank from 0, below getTopCount()
+     * @return the game at that rank
+     */
+    public synchronized Entry getTop(int rank) {
+        return top[rank];
+    }
+
+    /**
+     * @param player the name of a player
+     * @return the player's best game, or null if the player has none
+     */
+    public synchronized Entry getBest(String player) {
+        return best.get(player);
+    }
+
+    /**
+     * @return the number of records in the log, which compaction reduces
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        compactor.shutdown();
+        channel.close();
+    }
+}
@@ -2,7 +2,16 @@ package hungernagini;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Random;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
 import javax.swing.*;
 
 /**
@@ -11,22 +20,128 @@ import javax.swing.*;
  *
  * @author Nguyen Kim Bao Nguyen
  */
-public class Main extends JPanel implements ActionListener {
+public class Main extends JPanel implements GameLoop.Listener {
 
     // Constants for screen dimensions and game speed
     public static final int SCREEN_WIDTH = 640;
     public static final int SCREEN_HEIGHT = 480;
     public static final int DELAY = 100;
 
+    // Board size in cells, independent of the window; set with -Dhungernagini.columns=N and -Dhungernagini.rows=N
+    public static final int BOARD_COLUMNS = Integer.getInteger("hungernagini.columns", SCREEN_WIDTH / Map.UNIT_SIZE);
+    public static final int BOARD_ROWS = Integer.getInteger("hungernagini.rows", SCREEN_HEIGHT / Map.UNIT_SIZE);
+
+    // Logic ticks per second, can be changed with -Dhungernagini.tickRate=N
+    public static final int TICK_RATE = Integer.getInteger("hungernagini.tickRate", 1000 / DELAY);
+
+    // Folder for replay files, can be changed with -Dhungernagini.replayDir=PATH
+    public static final String REPLAY_DIR = System.getProperty("hungernagini.replayDir",
+            System.getProperty("user.home") + File.separator + ".hungernagini" + File.separator + "replays");
+
+    // Server to play on instead of locally, as host or host:port; set with -Dhungernagini.server=ADDRESS
+    public static final String SERVER = System.getProperty("hungernagini.server");
+
+    // Watches a game played on SERVER instead of playing one; set with -Dhungernagini.watch=true
+    public static final boolean WATCH = Boolean.getBoolean("hungernagini.watch");
+
+    // Computer snakes sharing the board in arena mode, none by default; set with -Dhungernagini.arenaBots=N
+    public static final int ARENA_BOTS = Integer.getInteger("hungernagini.arenaBots", 0);
+
+    // Apples and other pickups on the board at once, which plays the game as an arena; set with -Dhungernagini.pickups=N
+    public static final int PICKUPS = Integer.getInteger("hungernagini.pickups", 0);
+
+    // Checkpoint of the running game, can be changed with -Dhungernagini.saveFile=PATH
+    public static final String SAVE_FILE = System.getProperty("hungernagini.saveFile",
+            System.getProperty("user.home") + File.separator + ".hungernagini" + File.separator + "checkpoint.hns");
+
+    // Ticks between two checkpoints, five seconds of play by default; 0 or less turns checkpoints off
+    public static final int CHECKPOINT_TICKS = Integer.getInteger("hungernagini.checkpointTicks", 5 * TICK_RATE);
+
+    // Draws on a Canvas from the loop thread instead of through Swing's repaint()
+    public static final boolean ACTIVE_RENDERING = Boolean.getBoolean("hungernagini.activeRendering");
+
+    // Log of finished games and the name they are recorded under
+    public static final String SCORE_FILE = System.getProperty("hungernagini.scoreFile",
+            System.getProperty("user.home") + File.separator + ".hungernagini" + File.separator + "scores.log");
+    public static final String PLAYER = System.getProperty("hungernagini.player", System.getProperty("user.name", "player"));
+
+    // Shows tick, paint and input figures over the game from the start; F3 toggles them while playing
+    public static final boolean DEBUG_OVERLAY = Boolean.getBoolean("hungernagini.debugOverlay");
+
+    // Shown on the menu while SERVER is asked for a game
+    private static final String CONNECTING = "Asking " + SERVER + " for a game...";
+
+    // Text of the "About" screen
+    private static final String ABOUT_TITLE = "About The Game"; // Title text
+    private static final String[] ABOUT_LINES = {
+        "This is a classic Snake Game, where you guide the snake",
+        "to eat apples and grow longer."
+    }; // Game description lines
+    private static final String ABOUT_AUTHORS = "Our authors:"; // Subtitle for authors
+    private static final String[] AUTHOR_NAMES = {
+        "Nguyen Kim Bao Nguyen", "Nguyen Dao Thu Ngan", "Nguyen Quang Huy",
+        "Vo Chi Trong", "Lim The Toan", "Thai Hoang Chuong"
+    }; // Array of author names
+
     // Game objects and states
-    Snake snake;  // Snake object
-    Apple apple;  // Apple object, linked to the snake
+    GameEngine engine; // Rules and state of the current game
     Map map;      // Map object
-    Timer timer;  // Controls game loop timing
+    Camera camera; // Part of the board shown in the window
+    final InputQueue input = new InputQueue(16); // Direction keys waiting for the loop thread
+    GameLoop loop; // Runs the ticks and frames of the game on its own thread
+    private GameCanvas canvas;     // Shows the game when ACTIVE_RENDERING is set, null otherwise
+    private ReplayWriter recorder; // Records the current game, null if recording failed
+    private GameClient client;     // Connection to SERVER, null when playing locally
+    Arena arena;                   // The board shared with computer snakes in arena mode, null otherwise
+    private char[] arenaDirections; // Direction of every arena snake for the next tick
+    private PathfindingBot.Route[] arenaRoutes; // Path each arena snake is following
+    private final PathfindingBot autopilot = new PathfindingBot(); // Steers the computer snakes, and the player's on request
+    volatile boolean autopilotOn;  // Set with the A key: the player's snake steers itself
+    private volatile boolean checkpointFailed; // Set when the save file could not be written
+    private volatile boolean checkpointWriting; // Set while the last checkpoint is on its way to the file
+    private ByteBuffer checkpointData = ByteBuffer.allocate(4096); // The last checkpoint, reused for the next
+    private final ExecutorService checkpointWriter = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    }); // Writes checkpoints and deletes them, in order, away from the loop thread
+    private final ExecutorService connector = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Connect");
+        thread.setDaemon(true);
+        return thread;
+    }); // Connects to SERVER and waits for its games, away from the event thread
+    private boolean connecting;    // True while a game is asked of SERVER, set on the event thread
+    private Leaderboard leaderboard;  // Finished games, null if the score file cannot be used
+    private Leaderboard.Entry shownTop;  // Best game when highScoreLine was built
+    private Leaderboard.Entry shownBest; // The player's best game when highScoreLine was built
+    private String highScoreLine;     // Best scores shown on the menu, null while there are none
+    private long gameSeed;            // Seed of the current game, 0 if unknown
+    final Instrumentation instrumentation = new Instrumentation(); // Histograms of the tick, paint and input
+    private volatile boolean overlayOn = DEBUG_OVERLAY; // Set with the F3 key: the figures are drawn over the game
+    final Object stateLock = new Object(); // Guards the game state shared by the loop thread and the event thread
     boolean running;  // Indicates if the game is running
     private boolean inMenu = true; // True if game is in menu state
     private boolean inSA = false;  // True if game is in "Showing About" state
+    private boolean canResume = Files.exists(Paths.get(SAVE_FILE)); // True if a checkpoint can be resumed
     boolean gameOver = false;      // Tracks game-over state
+    boolean won = false;           // True if the snake filled the whole board
+
+    // Rendering state handed from the loop thread to the event thread, guarded by stateLock
+    private double alpha = 1;                          // Position between the last two ticks
+    private final int[] dirtyCells = new int[64];      // Cells to repaint in the next frame
+    private int dirtyCount;                            // Number of entries in dirtyCells
+    private boolean fullRepaint;                       // True when dirtyCells overflowed
+    private boolean scoreDirty;                        // True when the score line needs painting
+    private final int[] movingCells = {-1, -1, -1, -1}; // Cells the interpolated head and tail covered last frame
+    private boolean paintPending;                      // True while a paint task is queued on the event thread
+    private final Runnable paintTask = this::paintDirtyCells; // Paints the queued cells, created once
+
+    // Debug overlay, used on the event thread only
+    private static final int OVERLAY_HEIGHT = 4 * 14 + 4;             // Four lines of debugFont
+    private static final long OVERLAY_REFRESH_NANOS = 500_000_000L;   // The text changes twice a second
+    private final String[] overlayLines = new String[4];              // Current text of the overlay
+    private long overlayUpdated = System.nanoTime() - OVERLAY_REFRESH_NANOS; // When overlayLines were last written
+    private final Rectangle paintClip = new Rectangle();              // Clip of the current paint, reused
 
     /**
      * Constructor to set up the game panel
@@ -36,6 +151,12 @@ public class Main extends JPanel implements ActionListener {
         this.setOpaque(true);              // Ensure correct background drawing
         this.addKeyListener(new MyKeyAdapter()); // Add KeyListener for key inputs
         this.setPreferredSize(new Dimension(SCREEN_WIDTH, SCREEN_HEIGHT)); // Set panel size
+        try {
+            leaderboard = new Leaderboard(Paths.get(SCORE_FILE)); // Reads the best scores for the menu
+            updateHighScoreLine();
+        } catch (IOException e) {
+            System.err.println("Scores will not be kept: " + e);
+        }
     }
 
     /**
@@ -47,6 +168,60 @@ public class Main extends JPanel implements ActionListener {
      */
     @Override
     protected void paintComponent(Graphics g) {
+        instrumentation.beginPaint();
+        synchronized (stateLock) { // The loop thread must not tick while a frame is drawn
+            paintScreen(g);
+        }
+        g.getClipBounds(paintClip);
+        instrumentation.endPaint(paintClip.width * paintClip.height);
+        Startup.framePainted();
+    }
+
+    /**
+     * Draws a whole frame on the canvas. Called with stateLock held.
+     *
+     * @param g the Graphics of the canvas' back buffer
+     */
+    private void paintFrame(Graphics g) {
+        instrumentation.beginPaint();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT); // Back buffers keep an old frame
+        paintScreen(g);
+        instrumentation.endPaint(SCREEN_WIDTH * SCREEN_HEIGHT);
+        Startup.framePainted();
+    }
+
+    /**
+     * Creates the canvas the game is shown on in active rendering mode. The
+     * panel then only holds the game state and is not displayed.
+     *
+     * @return the canvas to put in the window
+     */
+    public Component createCanvas() {
+        canvas = new GameCanvas(stateLock, this::paintFrame, SCREEN_WIDTH, SCREEN_HEIGHT);
+        canvas.addKeyListener(new MyKeyAdapter());
+        return canvas;
+    }
+
+    /**
+     * Sends repaint requests to the canvas in active rendering mode, so
+     * screens drawn on demand still appear.
+     */
+    @Override
+    public void repaint(long time, int x, int y, int width, int height) {
+        if (canvas != null) {
+            canvas.repaint();
+        } else {
+            super.repaint(time, x, y, width, height);
+        }
+    }
+
+    /**
+     * Draws the current screen. Called with stateLock held.
+     *
+     * @param g The Graphics object used for drawing on the panel.
+     */
+    private void paintScreen(Graphics g) {
         super.paintComponent(g); // Ensures the component is properly cleared before custom painting
 
         if (inMenu) {
@@ -56,22 +231,50 @@ public class Main extends JPanel implements ActionListener {
         } else {
             if (running) {
                 map.drawGrid(g);  // Render the map grid for visual structure
-                snake.draw(g);    // Draw the snake on the screen
-                apple.draw(g);    // Display the apple for the snake to eat
-
-                // Display the current score
-                g.setColor(Color.white);
-                g.setFont(new Font("Ink Free", Font.BOLD, 40));
-                FontMetrics metrics = getFontMetrics(g.getFont());
-                g.drawString("Score: " + snake.applesEaten,
-                        (SCREEN_WIDTH - metrics.stringWidth("Score: " + snake.applesEaten)) / 2,
-                        g.getFont().getSize());
+
+                // Draw the board in board coordinates, shifted to the camera; the clip culls everything off screen
+                int shiftX = camera.getX() * Map.UNIT_SIZE;
+                int shiftY = camera.getY() * Map.UNIT_SIZE;
+                g.translate(-shiftX, -shiftY);
+                if (arena != null) {
+                    arena.draw(g, alpha);     // Draw every snake and apple of the arena
+                } else {
+                    engine.getSnake().draw(g, alpha); // Draw the snake between its last two positions
+                    engine.getApple().draw(g);    // Display the apple for the snake to eat
+                }
+                g.translate(shiftX, shiftY);
+
+                // Display the current score, re-rendered only when it changes
+                RenderCache cache = RenderCache.get();
+                cache.scoreText.drawCentered(g, player().applesEaten, SCREEN_WIDTH, cache.mediumFont.getSize());
+                if (overlayOn) {
+                    drawOverlay(g);
+                }
             } else {
                 gameOver(g);  // Show the game over screen when not running
             }
         }
     }
 
+    /**
+     * Draws the instrumentation figures in the bottom-left corner, refreshing
+     * the text at most twice a second.
+     */
+    private void drawOverlay(Graphics g) {
+        long now = System.nanoTime();
+        if (now - overlayUpdated >= OVERLAY_REFRESH_NANOS) {
+            instrumentation.describe(overlayLines);
+            overlayUpdated = now;
+        }
+        g.setFont(RenderCache.get().debugFont);
+        g.setColor(Color.YELLOW);
+        int y = SCREEN_HEIGHT - OVERLAY_HEIGHT + 12;
+        for (String line : overlayLines) {
+            g.drawString(line, 4, y);
+            y += 14;
+        }
+    }
+
     /**
      * Sets up the main menu screen by adjusting game state flags and triggering
      * a repaint to display the menu options.
@@ -80,6 +283,7 @@ public class Main extends JPanel implements ActionListener {
         inMenu = true;    // Set the game state to "menu" mode
         running = false;  // Ensure the game is not running while in the menu
         inSA = false;     // Set 'inSA' (in "About" screen) to false, as we're now in the menu
+        canResume = Files.exists(Paths.get(SAVE_FILE)); // Offer the last checkpoint, if there is one
 
         repaint();        // Repaint the panel to display the menu screen
     }
@@ -90,33 +294,339 @@ public class Main extends JPanel implements ActionListener {
      * @param g Graphics object used to draw text and shapes on the panel
      */
     private void drawMenu(Graphics g) {
+        RenderCache cache = RenderCache.get(); // Preallocated fonts and text widths
+
         // Set color and font for the game title
         g.setColor(Color.RED);
-        g.setFont(new Font("Segoe Script", Font.BOLD, 70));
-        g.drawString("Hunger Nagini", (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Hunger Nagini")) / 2, SCREEN_HEIGHT / 2 - 100);
+        drawCentered(g, cache.titleFont, "Hunger Nagini", SCREEN_HEIGHT / 2 - 100);
+
+        // Best score overall and the player's own, rendered again only when one of them changes
+        if (highScoreLine != null) {
+            cache.highScoreText.drawCentered(g, highScoreLine, SCREEN_WIDTH, SCREEN_HEIGHT / 2 - 55);
+        }
 
         // Set color and font for the menu options
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Ink Free", Font.BOLD, 40));
 
         // Draw menu options: "Play", "About", and "Quit", centered on the screen
-        g.drawString("Press 1 to Play", (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Press 1 to Play")) / 2, SCREEN_HEIGHT / 2);
-        g.drawString("Press 2 for About", (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Press 2 for About")) / 2, SCREEN_HEIGHT / 2 + 70);
-        g.drawString("Press 3 to Quit", (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Press 3 to Quit")) / 2, SCREEN_HEIGHT / 2 + 140);
+        drawCentered(g, cache.mediumFont, "Press 1 to Play", SCREEN_HEIGHT / 2);
+        drawCentered(g, cache.mediumFont, "Press 2 for About", SCREEN_HEIGHT / 2 + 70);
+        drawCentered(g, cache.mediumFont, "Press 3 to Quit", SCREEN_HEIGHT / 2 + 140);
+        if (canResume) {
+            drawCentered(g, cache.smallFont, "Press 5 to Resume your last game", SCREEN_HEIGHT / 2 + 200);
+        }
+        if (connecting) {
+            g.setColor(Color.YELLOW);
+            drawCentered(g, cache.smallFont, CONNECTING, SCREEN_HEIGHT / 2 + 225);
+        }
+    }
+
+    /**
+     * Draws a line of text centered horizontally, using the cached width of
+     * the text.
+     *
+     * @param g Graphics object used to draw the text
+     * @param font the font to draw with
+     * @param text the text to draw
+     * @param y the y coordinate of the text baseline
+     */
+    private void drawCentered(Graphics g, Font font, String text, int y) {
+        g.setFont(font);
+        g.drawString(text, (SCREEN_WIDTH - RenderCache.get().stringWidth(font, text)) / 2, y);
     }
 
     /**
      * Initializes and starts the game
      */
     public void startGame() {
-        map = new Map();           // Create new map
-        snake = new Snake();       // Create new snake
-        apple = new Apple(snake);  // Create new apple for the snake
-        apple.newApple();          // Generate a new apple
+        stopGame();                // Make sure the previous game's thread has finished
+        if (SERVER != null) {
+            startRemoteGame();     // The server plays, this window only shows the game
+            return;
+        }
+        if (ARENA_BOTS > 0 || PICKUPS > 0) {
+            startArena();          // Share the board with computer snakes, or with many pickups
+            return;
+        }
+        long seed = System.nanoTime(); // The seed and the turns are all a replay needs
+        gameSeed = seed;
+        engine = new GameEngine(BOARD_COLUMNS, BOARD_ROWS, seed); // Create a new game with a snake and an apple
+        openRecorder(seed);        // Start recording the game
+        beginGame();
+    }
+
+    /**
+     * Starts an arena where the player is snake 0 and ARENA_BOTS computer
+     * snakes compete for the apples, PICKUPS of them if set.
+     */
+    private void startArena() {
+        gameSeed = System.nanoTime();
+        int pickups = PICKUPS > 0 ? PICKUPS : ARENA_BOTS / 2 + 1;
+        arena = new Arena(BOARD_COLUMNS, BOARD_ROWS, ARENA_BOTS + 1, pickups, gameSeed);
+        arenaDirections = new char[arena.getSnakeCount()];
+        arenaRoutes = new PathfindingBot.Route[arena.getSnakeCount()];
+        for (int i = 0; i < arenaRoutes.length; i++) {
+            arenaRoutes[i] = new PathfindingBot.Route();
+        }
+        beginGame();
+    }
+
+    /**
+     * @return the snake the player steers
+     */
+    private Snake player() {
+        return arena != null ? arena.getSnake(0) : engine.getSnake();
+    }
+
+    /**
+     * Asks SERVER for a new game, connecting first if needed. The connection
+     * and the wait for the game happen on the connector thread, which hands
+     * the game back to the event thread; the timeouts of GameClient bound
+     * the wait.
+     */
+    private void startRemoteGame() {
+        if (connecting) {
+            return;                // A game is already on its way
+        }
+        connecting = true;
+        repaint();                 // Show that the server is being asked
+        GameClient current = client;
+        connector.execute(() -> {
+            GameClient connection = current;
+            try {
+                if (connection == null) {
+                    connection = GameClient.connect(SERVER);
+                }
+                GameClient connected = connection;
+                GameEngine game = WATCH ? connected.watch() : connected.newGame(); // A copy kept up to date by the server's steps
+                SwingUtilities.invokeLater(() -> {
+                    connecting = false;
+                    client = connected;
+                    engine = game;
+                    gameSeed = 0;      // Only the server knows it
+                    beginGame();
+                });
+            } catch (IOException e) {
+                System.err.println("Cannot play on " + SERVER + ": " + e);
+                closeQuietly(connection);
+                SwingUtilities.invokeLater(() -> {
+                    connecting = false;
+                    client = null;
+                    Menu();
+                });
+            }
+        });
+    }
+
+    /**
+     * Closes the connection to the server.
+     */
+    private void disconnect() {
+        closeQuietly(client);
+        client = null;
+    }
+
+    /**
+     * Closes a connection, if there is one, ignoring errors.
+     */
+    private static void closeQuietly(GameClient connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // The connection is gone either way
+            }
+        }
+    }
+
+    /**
+     * Continues the game saved in the last checkpoint. It is not recorded,
+     * since a replay has to start from the seed.
+     */
+    public void resumeGame() {
+        stopGame();
+        try {
+            engine = Snapshot.load(Paths.get(SAVE_FILE)); // Restore the snake, the apple and the random state
+            gameSeed = 0;              // A snapshot keeps the random state, not the seed
+        } catch (IOException e) {
+            System.err.println("Cannot resume: " + e);
+            Menu();
+            return;
+        }
+        beginGame();
+    }
+
+    /**
+     * Stops the loop of the previous game and finishes its replay.
+     */
+    private void stopGame() {
+        if (loop != null) {
+            loop.stop();           // Make sure the previous game's thread has finished
+        }
+        closeRecorder();           // Finish the replay of the previous game if it was left running
+        arena = null;              // Back to a single snake unless startArena() follows
+    }
+
+    /**
+     * Shows the game in engine and starts its loop.
+     */
+    private void beginGame() {
+        showGame();
+        loop = new GameLoop(this, TICK_RATE, displayRefreshRate()); // Initialize the game loop
+        loop.start();              // Start ticking on the loop thread
+    }
+
+    /**
+     * Sets up the panel to draw the game in engine, without ticking it.
+     * The paint benchmark uses it to draw a game it moves itself.
+     */
+    void showGame() {
+        OccupancyGrid board = player().grid;
+        map = new Map(board.getColumns(), board.getRows()); // Create new map
+        camera = new Camera(board.getColumns(), board.getRows(),
+                SCREEN_WIDTH / Map.UNIT_SIZE, SCREEN_HEIGHT / Map.UNIT_SIZE);
+        camera.follow(player().body.headCell()); // Look at the snake
+        input.clear();             // Forget keys pressed during the previous game
+        won = false;               // Clear the result of the previous game
         running = true;            // Set game state to running
         inMenu = false;            // Set state to in-game
-        timer = new Timer(DELAY, this); // Initialize timer
-        timer.start();             // Start timer
+        alpha = 1;                 // Draw the snake where it is until the first frame
+        dirtyCount = 0;            // Forget what was queued for the previous game
+        Arrays.fill(movingCells, -1);
+        repaint();                 // Draw the whole board once, frames only repaint what changed
+    }
+
+    /**
+     * Creates the replay file of a new game. Recording is turned off for the
+     * game if the file cannot be created.
+     *
+     * @param seed the seed of the game
+     */
+    private void openRecorder(long seed) {
+        try {
+            Path folder = Paths.get(REPLAY_DIR);
+            Files.createDirectories(folder);
+            recorder = new ReplayWriter(folder.resolve("replay-" + System.currentTimeMillis() + ".hnr"),
+                    seed, BOARD_COLUMNS, BOARD_ROWS);
+        } catch (IOException e) {
+            System.err.println("Replay not recorded: " + e);
+            recorder = null;
+        }
+    }
+
+    /**
+     * Writes the end of the replay and closes its file.
+     */
+    private void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                System.err.println("Replay not finished: " + e);
+            }
+            recorder = null;
+        }
+    }
+
+    /**
+     * Sends a turn to the server and applies the steps it sent. The game
+     * ends if the connection is lost.
+     *
+     * @param direction the direction the player wants
+     * @return the number of steps applied
+     */
+    private int exchange(char direction) {
+        try {
+            if (direction != engine.getSnake().direction && !WATCH) {
+                client.turn(direction); // A spectator's keys steer nothing
+            }
+            return client.receive(engine);
+        } catch (IOException e) {
+            System.err.println("Lost the connection to " + SERVER + ": " + e);
+            disconnect();
+            engine.applyRemoteResult(false, false); // Show the game-over screen
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the game to SAVE_FILE, so it can be resumed if the program ends.
+     * The game is encoded here, with stateLock held, into a buffer kept from
+     * the last checkpoint; the checkpoint thread writes the file. If that is
+     * still busy with the last one, this checkpoint is skipped. Checkpointing
+     * stops for the session if the file cannot be written.
+     */
+    private void checkpoint() {
+        if (checkpointWriting) {
+            return;
+        }
+        int size = Snapshot.fileSize(engine);
+        if (checkpointData.capacity() < size) {
+            checkpointData = ByteBuffer.allocate(Math.max(size, checkpointData.capacity() * 2));
+        }
+        checkpointData.clear();
+        Snapshot.encode(engine, checkpointData);
+        checkpointData.flip();
+        checkpointWriting = true;
+        ByteBuffer data = checkpointData; // Not touched again until checkpointWriting is cleared
+        checkpointWriter.execute(() -> {
+            try {
+                Path file = Paths.get(SAVE_FILE);
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                Snapshot.writeFile(data, file);
+            } catch (IOException e) {
+                System.err.println("Checkpoint not saved: " + e);
+                checkpointFailed = true;
+            } finally {
+                checkpointWriting = false;
+            }
+        });
+    }
+
+    /**
+     * Deletes SAVE_FILE once any checkpoint still being written is done, so
+     * a finished game cannot be resumed.
+     */
+    private void deleteCheckpoint() {
+        checkpointWriter.execute(() -> {
+            try {
+                Files.deleteIfExists(Paths.get(SAVE_FILE));
+            } catch (IOException e) {
+                System.err.println("Checkpoint not deleted: " + e);
+            }
+        });
+    }
+
+    /**
+     * Adds a step to the replay before it runs. Recording stops if the file
+     * cannot be written.
+     *
+     * @param direction the direction of the step
+     */
+    private void record(char direction) {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.step(engine, direction);
+        } catch (IOException e) {
+            System.err.println("Replay stopped: " + e);
+            recorder = null;
+        }
+    }
+
+    /**
+     * @return the refresh rate of the screen, or 60 if it is not known
+     */
+    private static int displayRefreshRate() {
+        if (!GraphicsEnvironment.isHeadless()) {
+            int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDisplayMode().getRefreshRate();
+            if (rate != DisplayMode.REFRESH_RATE_UNKNOWN) {
+                return rate;
+            }
+        }
+        return 60;
     }
 
     /**
@@ -125,60 +635,275 @@ public class Main extends JPanel implements ActionListener {
     public void gameOver(Graphics g) {
         gameOver = true; // Set the gameOver state to true
 
-        // Set up font and color for the score display
-        g.setColor(Color.red);
-        g.setFont(new Font("Ink Free", Font.BOLD, 40));
-        FontMetrics metrics1 = getFontMetrics(g.getFont()); // Metrics for centering the score text
+        RenderCache cache = RenderCache.get(); // Preallocated fonts, text widths and score image
 
         // Display the player's score in the center of the screen, slightly below halfway
-        g.drawString("Score: " + snake.applesEaten,
-                (SCREEN_WIDTH - metrics1.stringWidth("Score: " + snake.applesEaten)) / 2,
-                (SCREEN_HEIGHT + 100) / 2);
-
-        // Set up font and color for the "GAME OVER" message
-        g.setFont(new Font("Ink Free", Font.BOLD, 75));
-        FontMetrics metrics2 = getFontMetrics(g.getFont()); // Metrics for centering the "GAME OVER" text
+        cache.finalScoreText.drawCentered(g, player().applesEaten, SCREEN_WIDTH, (SCREEN_HEIGHT + 100) / 2);
 
-        // Display the "GAME OVER" message at the center of the screen
-        g.drawString("GAME OVER",
-                (SCREEN_WIDTH - metrics2.stringWidth("GAME OVER")) / 2,
-                SCREEN_HEIGHT / 2);
+        // Display the "GAME OVER" (or "YOU WIN" on a full board) message at the center of the screen
+        g.setColor(Color.red);
+        drawCentered(g, cache.largeFont, won ? "YOU WIN" : "GAME OVER", SCREEN_HEIGHT / 2);
 
-        // Set up font and color for replay and home options
+        // Set up color for replay and home options
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Ink Free", Font.BOLD, 20));
 
         // Display "Press 1 to RePlay" option below the "GAME OVER" text
-        g.drawString("Press 1 to RePlay",
-                (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Press 1 to RePlay")) / 2,
-                SCREEN_HEIGHT / 2 + 100);
+        drawCentered(g, cache.smallFont, "Press 1 to RePlay", SCREEN_HEIGHT / 2 + 100);
 
         // Display "Press 4 to get back Home" option below the replay option
-        g.drawString("Press 4 to get back Home",
-                (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Press 4 to get back Home")) / 2,
-                SCREEN_HEIGHT / 2 + 140);
+        drawCentered(g, cache.smallFont, "Press 4 to get back Home", SCREEN_HEIGHT / 2 + 140);
     }
 
     /**
-     * Invoked periodically by the Timer to update the game state. Moves the
-     * snake, checks for apple consumption, and handles collisions.
+     * Invoked by the game loop at the fixed tick rate to update the game
+     * state. The engine moves the snake, checks for apple consumption, and
+     * handles collisions.
      *
-     * @param e ActionEvent triggered by the Timer
+     * @return false once the game is over, which stops the loop
      */
     @Override
-    public void actionPerformed(ActionEvent e) {
-        if (running) {  // If the game is currently active
-            snake.move();            // Move the snake in its current direction
-            snake.checkApple(apple); // Check if the snake has eaten the apple
-
-            // Check for collisions with walls or itself
-            if (!snake.checkCollisions()) {
-                running = false;  // End the game if a collision occurs
-                timer.stop();     // Stop the game timer
-                gameOver = true;  // Set the gameOver state to true for display
+    public boolean update() {
+        instrumentation.beginTick();
+        try {
+            return tick();
+        } finally {
+            instrumentation.endTick();
+        }
+    }
+
+    /**
+     * Runs one tick of update().
+     *
+     * @return false once the game is over
+     */
+    private boolean tick() {
+        synchronized (stateLock) {
+            if (!running) {
+                return false;
+            }
+            if (arena != null ? stepArena() : stepGame()) {
+                if (camera.follow(player().body.headCell())) {
+                    fullRepaint = true; // The whole view scrolled
+                }
+                return true;
             }
+            won = arena != null ? arena.isAlive(0) : engine.isWon(); // Board full or last snake alive, or crashed
+            closeRecorder();  // The replay is complete
+            recordScore();
+            if (SERVER == null && arena == null) {
+                deleteCheckpoint(); // A finished game cannot be resumed
+            }
+            running = false;  // End the game
+            gameOver = true;  // Set the gameOver state to true for display
+        }
+        repaint(); // Repaint the screen to show the game-over screen
+        return false;
+    }
+
+    /**
+     * Adds the finished game to the leaderboard. Called with stateLock held.
+     */
+    private void recordScore() {
+        if (leaderboard == null || (SERVER != null && WATCH)) {
+            return; // A watched game is someone else's
+        }
+        Snake snake = player();
+        try {
+            leaderboard.record(PLAYER, snake.applesEaten, snake.body.size(),
+                    arena != null ? arena.getTicks() : engine.getTicks(), gameSeed);
+        } catch (IOException e) {
+            System.err.println("Score not recorded: " + e);
+        }
+        updateHighScoreLine();
+    }
+
+    /**
+     * Builds the menu's high-score line again if the best game or the
+     * player's best has changed since it was built. Called with stateLock
+     * held, or before the panel is shown.
+     */
+    private void updateHighScoreLine() {
+        if (leaderboard.getTopCount() == 0) {
+            return;
+        }
+        Leaderboard.Entry top = leaderboard.getTop(0);
+        Leaderboard.Entry mine = leaderboard.getBest(PLAYER);
+        if (top == shownTop && mine == shownBest) {
+            return; // Entries are replaced, never changed, so the line is still right
+        }
+        shownTop = top;
+        shownBest = mine;
+        highScoreLine = "High score " + top.getScore() + " by " + top.getPlayer()
+                + "   Your best " + (mine == null ? 0 : mine.getScore());
+    }
+
+    /**
+     * Advances the single-snake game one tick, taking at most one turn from
+     * the keys pressed so far. Called with stateLock held.
+     *
+     * @return true if the game goes on
+     */
+    private boolean stepGame() {
+        char current = engine.getSnake().direction;
+        char direction = autopilotOn ? autopilot.nextDirection(engine) : input.nextTurn(current);
+        if (!autopilotOn && direction != current) {
+            instrumentation.inputTaken(direction, input.getLastOfferedAt());
+        }
+        int steps = 1;
+        if (client != null) {
+            steps = exchange(direction); // The server steps the game
+        } else {
+            record(direction);
+            engine.step(direction);
+        }
+        if (!engine.isRunning()) {
+            return false;
+        }
+        if (steps > 1 || steps < 0) {
+            fullRepaint = true; // Several steps or a whole game arrived at once, only the last step's cells are known
+        }
+        for (int i = 0; steps > 0 && i < engine.getDirtyCount(); i++) {
+            queueCell(engine.getDirtyCell(i)); // Painted with the next frame
+        }
+        scoreDirty |= engine.isScoreChanged();
+        if (engine.isScoreChanged() && client == null) {
+            OccupancyGrid grid = engine.getSnake().grid;
+            instrumentation.appleSpawned(grid.getPickAttempts(), grid.getOccupiedCount());
+        }
+        if (client == null && CHECKPOINT_TICKS > 0 && engine.getTicks() % CHECKPOINT_TICKS == 0 && !checkpointFailed) {
+            checkpoint(); // Only encodes the game here, the file is written on the checkpoint thread
+        }
+        return true;
+    }
+
+    /**
+     * Advances the arena one tick: the player's snake takes a turn from the
+     * keys pressed so far, the others follow a path to an apple. Called with
+     * stateLock held.
+     *
+     * @return true while the player is alive and, if there are computer snakes, one of them is too
+     */
+    private boolean stepArena() {
+        char current = arena.getSnake(0).direction;
+        arenaDirections[0] = input.nextTurn(current);
+        if (arenaDirections[0] != current) {
+            instrumentation.inputTaken(arenaDirections[0], input.getLastOfferedAt());
+        }
+        for (int i = autopilotOn ? 0 : 1; i < arenaDirections.length; i++) {
+            if (arena.isAlive(i)) {
+                Snake bot = arena.getSnake(i);
+                int apple = arenaRoutes[i].getTarget();
+                if (apple < 0 || !arena.hasApple(apple)) {
+                    apple = arena.nearestApple(bot.body.headCell()); // Pick a new apple only when the old one is gone
+                }
+                arenaDirections[i] = autopilot.nextDirection(bot, apple, arenaRoutes[i]);
+            }
+        }
+        int score = arena.getSnake(0).applesEaten;
+        arena.step(arenaDirections);
+
+        for (int i = 0; i < arena.getDirtyCount(); i++) {
+            queueCell(arena.getDirtyCell(i));
+        }
+        fullRepaint |= arena.isBodiesRemoved(); // A dead snake's whole body disappears
+        scoreDirty |= arena.getSnake(0).applesEaten != score;
+        return arena.isAlive(0) && (arena.getAliveCount() > 1 || arena.getSnakeCount() == 1);
+    }
+
+    /**
+     * Invoked by the game loop at the display rate. Queues the cells the
+     * interpolated head and tail cover, now and in the previous frame, and
+     * asks the event thread to paint them.
+     *
+     * @param alpha how far the game is between the last tick and the next one
+     */
+    @Override
+    public void render(double alpha) {
+        synchronized (stateLock) {
+            if (!running) {
+                return;
+            }
+            this.alpha = alpha;
+            if (canvas != null) {
+                // Active rendering: the whole frame is drawn and shown right here
+                dirtyCount = 0;
+                fullRepaint = false;
+                scoreDirty = false;
+                canvas.renderFrame();
+                return;
+            }
+            if (arena != null) {
+                fullRepaint = true; // Every snake's head and tail slides, the view is repainted
+            } else {
+                Snake snake = engine.getSnake();
+                for (int cell : movingCells) {
+                    queueCell(cell); // Wipe where the head and tail were drawn last frame
+                }
+                movingCells[0] = snake.getPreviousHead();
+                movingCells[1] = snake.body.headCell();
+                movingCells[2] = snake.getRemovedTail();
+                movingCells[3] = snake.body.tailCell();
+                for (int cell : movingCells) {
+                    queueCell(cell);
+                }
+            }
+            if (paintPending) {
+                return; // The queued task will pick up these cells too
+            }
+            paintPending = true;
+        }
+        SwingUtilities.invokeLater(paintTask);
+    }
+
+    /**
+     * Adds a cell to the next frame. Called with stateLock held.
+     */
+    private void queueCell(int cell) {
+        if (cell < 0) {
+            return;
+        }
+        if (dirtyCount == dirtyCells.length) {
+            fullRepaint = true; // Too many changes, paint everything
+        } else {
+            dirtyCells[dirtyCount++] = cell;
+        }
+    }
+
+    /**
+     * Paints the queued cells, and the score line if the score changed. Each
+     * area is painted right away on its own: repaint() would merge the head
+     * and tail areas into one rectangle covering most of the board. Runs on
+     * the event thread.
+     */
+    private void paintDirtyCells() {
+        synchronized (stateLock) {
+            paintPending = false;
+            if (running) {
+                if (fullRepaint) {
+                    paintImmediately(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+                } else {
+                    int columns = player().grid.getColumns();
+                    for (int i = 0; i < dirtyCount; i++) {
+                        int cell = dirtyCells[i];
+                        // Screen position of the cell; paintImmediately ignores cells off screen
+                        paintImmediately((cell % columns - camera.getX()) * Map.UNIT_SIZE,
+                                (cell / columns - camera.getY()) * Map.UNIT_SIZE,
+                                Map.UNIT_SIZE, Map.UNIT_SIZE);
+                    }
+                    if (scoreDirty) {
+                        RenderCache cache = RenderCache.get();
+                        paintImmediately(0, 0, SCREEN_WIDTH,
+                                cache.mediumFont.getSize() + cache.metrics(cache.mediumFont).getDescent());
+                    }
+                    if (overlayOn) {
+                        paintImmediately(0, SCREEN_HEIGHT - OVERLAY_HEIGHT, SCREEN_WIDTH, OVERLAY_HEIGHT);
+                    }
+                }
+            }
+            dirtyCount = 0;
+            fullRepaint = false;
+            scoreDirty = false;
         }
-        repaint(); // Repaint the screen to update game visuals
     }
 
     /**
@@ -213,8 +938,11 @@ public class Main extends JPanel implements ActionListener {
             }
         }
 
-        // Handle menu selection keys
+        // Handle menu selection keys; only Quit works while a game is asked of the server
         private void handleMenu(int keyCode) {
+            if (connecting && keyCode != KeyEvent.VK_3) {
+                return;
+            }
             switch (keyCode) {
                 case KeyEvent.VK_1:
                     startGame();
@@ -228,44 +956,37 @@ public class Main extends JPanel implements ActionListener {
                 case KeyEvent.VK_4:
                     Menu();
                     break;
+                case KeyEvent.VK_5:
+                    if (canResume) {
+                        resumeGame();
+                    }
+                    break;
             }
         }
 
-        // Define a variable to track the last key press time
-        private long lastKeyPressTime = 0;
-
-        // Handle snake movement keys
+        // Handle snake movement keys. Every key is queued, the loop thread
+        // takes one turn per tick and drops reversals when it takes them.
+        // A switches the autopilot on and off, F3 the debug overlay.
         private void handleGameControls(int keyCode) {
-            long currentTime = System.currentTimeMillis();
-
-            // Check if the last key press was over 100 ms ago
-            if (currentTime - lastKeyPressTime < 100) {
-                return; // Ignore the key press if the delay has not passed
-            }
-
-            // Update last key press time
-            lastKeyPressTime = currentTime;
-
             switch (keyCode) {
                 case KeyEvent.VK_LEFT:
-                    if (snake.direction != 'R') {
-                        snake.direction = 'L';
-                    }
+                    input.offer('L');
                     break;
                 case KeyEvent.VK_RIGHT:
-                    if (snake.direction != 'L') {
-                        snake.direction = 'R';
-                    }
+                    input.offer('R');
                     break;
                 case KeyEvent.VK_UP:
-                    if (snake.direction != 'D') {
-                        snake.direction = 'U';
-                    }
+                    input.offer('U');
                     break;
                 case KeyEvent.VK_DOWN:
-                    if (snake.direction != 'U') {
-                        snake.direction = 'D';
-                    }
+                    input.offer('D');
+                    break;
+                case KeyEvent.VK_A:
+                    autopilotOn = !autopilotOn; // Let the PathfindingBot play, or take over again
+                    break;
+                case KeyEvent.VK_F3:
+                    overlayOn = !overlayOn;
+                    repaint();
                     break;
             }
         }
@@ -293,16 +1014,7 @@ public class Main extends JPanel implements ActionListener {
      * @param g Graphics object used to draw text and shapes on the panel
      */
     public void drawAbout(Graphics g) {
-        String s1 = "About The Game";  // Title text
-        String[] lines = {
-            "This is a classic Snake Game, where you guide the snake",
-            "to eat apples and grow longer."
-        }; // Game description lines
-        String s3 = "Our authors:"; // Subtitle for authors
-        String[] name = {
-            "Nguyen Kim Bao Nguyen", "Nguyen Dao Thu Ngan", "Nguyen Quang Huy",
-            "Vo Chi Trong", "Lim The Toan", "Thai Hoang Chuong"
-        }; // Array of author names
+        RenderCache cache = RenderCache.get(); // Preallocated fonts and text widths
         int a = -25;          // Initial vertical offset for text positioning
         int lineHeight = 25;  // Vertical distance between lines of text
 
@@ -310,42 +1022,52 @@ public class Main extends JPanel implements ActionListener {
         g.setColor(Color.RED);      // Set color for the title
 
         // Draw the title
-        g.setFont(new Font("Helvetica", Font.BOLD, 60));
-        g.drawString(s1, (SCREEN_WIDTH - g.getFontMetrics().stringWidth(s1)) / 2, 90);
+        drawCentered(g, cache.aboutTitleFont, ABOUT_TITLE, 90);
 
         g.setColor(Color.WHITE); // Set color for text content
-        g.setFont(new Font("Helvetica", Font.PLAIN, 18));
 
         // Draw each line of the game description
-        for (int i = 0; i < lines.length; i++) {
-            g.drawString(lines[i], (SCREEN_WIDTH - g.getFontMetrics().stringWidth(lines[i])) / 2, 130 + i * lineHeight);
+        for (int i = 0; i < ABOUT_LINES.length; i++) {
+            drawCentered(g, cache.aboutFont, ABOUT_LINES[i], 130 + i * lineHeight);
         }
 
         // Draw "Our authors:" subtitle
-        g.drawString(s3, (SCREEN_WIDTH - g.getFontMetrics().stringWidth(s3)) / 2, SCREEN_HEIGHT / 2 + 2 * a);
+        drawCentered(g, cache.aboutFont, ABOUT_AUTHORS, SCREEN_HEIGHT / 2 + 2 * a);
 
         // Draw each author's name
-        for (String n : name) {
-            g.drawString(n, (SCREEN_WIDTH - g.getFontMetrics().stringWidth(n)) / 2, SCREEN_HEIGHT / 2 + a);
+        for (String n : AUTHOR_NAMES) {
+            drawCentered(g, cache.aboutFont, n, SCREEN_HEIGHT / 2 + a);
             a += 25;
         }
 
         // Draw instruction to return to the main menu
-        g.setFont(new Font("Ink Free", Font.BOLD, 20));
-        g.drawString("Press 4 to get back Home", (SCREEN_WIDTH - g.getFontMetrics().stringWidth("Press 4 to get back Home")) / 2, SCREEN_HEIGHT / 2 + 140);
+        drawCentered(g, cache.smallFont, "Press 4 to get back Home", SCREEN_HEIGHT / 2 + 140);
     }
 
     public static void main(String[] args) {
+        Startup.preload(RenderCache::get);            // Resolve the fonts and draw the sprites while the window is built
         JFrame frame = new JFrame("Hunger Nagini"); // Create the main application window titled "Hunger Nagini"
+        Startup.phase("frame");
         Main main = new Main();                       // Instantiate the Main game panel
-        frame.add(main);                              // Add the game panel to the frame
+        Component view = ACTIVE_RENDERING ? main.createCanvas() : main; // What the game is drawn on
+        frame.add(view);                              // Add the game view to the frame
+        Startup.phase("panel");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Exit the application when the frame is closed
         frame.setResizable(false);                     // Prevent the frame from being resized
         frame.pack();                                  // Adjust the frame size to fit the content
         frame.setLocationRelativeTo(null);             // Center the frame on the screen
         frame.setVisible(true);                        // Make the frame visible
-        main.setFocusable(true);                       // Allow the game panel to receive keyboard focus
-        main.requestFocusInWindow();                   // Request focus for the game panel to ensure it can capture input
+        Startup.phase("window shown");
+        view.setFocusable(true);                       // Allow the game view to receive keyboard focus
+        view.requestFocusInWindow();                   // Request focus for the game view to ensure it can capture input
+        Startup.afterFirstFrame(() -> {
+            main.instrumentation.start();              // Start JFR events, slow to load, once the menu is up
+            try {
+                main.instrumentation.register();       // Publish the measurements to JMX clients
+            } catch (JMException e) {
+                System.err.println("Instrumentation MBean not registered: " + e);
+            }
+        });
         main.Menu();                                   // Display the main menu when the game starts
     }
 }
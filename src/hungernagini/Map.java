@@ -16,26 +16,51 @@ public class Map extends JPanel {
 
     public static final int UNIT_SIZE = 20;
 
+    private Image gridImage; // The grid, rendered once and copied onto every frame
+    private final int width;  // Width of the drawn grid in pixels, the board or the screen if smaller
+    private final int height; // Height of the drawn grid in pixels, the board or the screen if smaller
+
     public Map() {
+        this(Main.SCREEN_WIDTH / UNIT_SIZE, Main.SCREEN_HEIGHT / UNIT_SIZE);
+    }
+
+    // Creates the map of a board of the given size in cells
+    public Map(int columns, int rows) {
         this.setBackground(Color.BLACK); // Set background color for the map
+        this.width = Math.min(Main.SCREEN_WIDTH, columns * UNIT_SIZE);
+        this.height = Math.min(Main.SCREEN_HEIGHT, rows * UNIT_SIZE);
     }
 
-    // Draws the grid on the map
+    // Draws the grid on the map by copying the pre-rendered grid image. The camera
+    // moves in whole cells, so the same image fits wherever it looks.
     public void drawGrid(Graphics g) {
-        Graphics2D g2d = (Graphics2D) g;
+        if (gridImage == null) {
+            gridImage = renderGrid(((Graphics2D) g).getDeviceConfiguration(), width, height);
+        }
+        g.drawImage(gridImage, 0, 0, null);
+    }
+
+    // Renders the grid lines once into an image compatible with the screen, so copying it is fast
+    private static Image renderGrid(GraphicsConfiguration config, int width, int height) {
+        Image image = config.createCompatibleImage(width, height);
+        Graphics2D g2d = (Graphics2D) image.getGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, width, height);
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setColor(Color.DARK_GRAY);
 
         // Draw vertical lines
-        for (int i = 0; i < Main.SCREEN_WIDTH / UNIT_SIZE; i++) {
-            g2d.drawLine(i * UNIT_SIZE, 0, i * UNIT_SIZE, Main.SCREEN_HEIGHT);
+        for (int i = 0; i < width / UNIT_SIZE; i++) {
+            g2d.drawLine(i * UNIT_SIZE, 0, i * UNIT_SIZE, height);
         }
 
         // Draw horizontal lines
-        for (int i = 0; i < Main.SCREEN_HEIGHT / UNIT_SIZE; i++) {
-            g2d.drawLine(0, i * UNIT_SIZE, Main.SCREEN_WIDTH, i * UNIT_SIZE);
+        for (int i = 0; i < height / UNIT_SIZE; i++) {
+            g2d.drawLine(0, i * UNIT_SIZE, width, i * UNIT_SIZE);
         }
-        
+
+        g2d.dispose();
+        return image;
     }
 
 }
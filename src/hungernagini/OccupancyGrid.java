@@ -0,0 +1,226 @@
+/*
+ * The OccupancyGrid class tracks which cells of the "Hunger Nagini" board are taken by the snake.
+ * It is updated incrementally as the head enters a cell and the tail leaves one.
+ */
+package hungernagini;
+
+import java.util.Random;
+
+/**
+ * OccupancyGrid is a bitset with one bit per board cell. Cells are packed
+ * indices (row * columns + column), the same as in SnakeBody, so bounds,
+ * self-collision and apple overlap tests are constant-time lookups. Packed
+ * indices are ints, so a board has at most MAX_CELLS cells.
+ */
+public class OccupancyGrid {
+
+    private final int columns; // Board width in cells
+    private final int rows;    // Board height in cells
+    private final int cellCount; // Cells on the board, columns * rows
+    private final long[] bits; // One bit per cell, set when the cell is occupied
+    private final FreeCellIndex freeCells; // The cells whose bit is clear, null on huge boards
+    private int occupiedCount; // Number of set bits
+    private int pickAttempts;  // Cells randomFreeCell() looked at in its last call
+
+    // Boards with more cells than this do without a FreeCellIndex, which is updated on every move
+    public static final int FREE_INDEX_LIMIT = 1 << 22;
+
+    // Most cells a board can have: every packed cell index must fit in an int
+    public static final int MAX_CELLS = Integer.MAX_VALUE;
+
+    private static final int RANDOM_PICKS = 64; // Random tries on a huge board before scanning for a free cell
+
+    /**
+     * Creates an empty grid for a board of the given size.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @throws IllegalArgumentException if a side is not positive or the board has more than MAX_CELLS cells
+     */
+    public OccupancyGrid(int columns, int rows) {
+        long cells = (long) columns * rows;
+        if (columns <= 0 || rows <= 0 || cells > MAX_CELLS) {
+            throw new IllegalArgumentException("Cannot make a board of " + columns + " by " + rows + " cells");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.cellCount = (int) cells;
+        this.bits = new long[(int) ((cells + 63) >>> 6)];
+        // On a huge board the snake never covers more than a sliver of it, so random picks find a free cell
+        this.freeCells = cellCount <= FREE_INDEX_LIMIT ? new FreeCellIndex(bits, cellCount) : null;
+    }
+
+    /**
+     * @return the board width in cells
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the board height in cells
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of cells on the board
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * @return the set of cells that are not occupied, or null on a board above FREE_INDEX_LIMIT cells
+     */
+    public FreeCellIndex getFreeCells() {
+        return freeCells;
+    }
+
+    /**
+     * @return the number of occupied cells
+     */
+    public int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    /**
+     * Picks a free cell uniformly at random. Uses the free-cell index when
+     * the board has one. On a huge board it tries a few random cells, each
+     * equally likely, and keeps the first free one; if none is, it draws a
+     * rank among the free cells and counts its way to that cell through the
+     * bitset, so every free cell stays equally likely.
+     *
+     * @param random the random source to use
+     * @return a free cell, or -1 if the board is full
+     */
+    public int randomFreeCell(Random random) {
+        if (freeCells != null) {
+            pickAttempts = 1; // One pick from the index
+            return freeCells.random(random);
+        }
+        if (occupiedCount == cellCount) {
+            pickAttempts = 0;
+            return -1;
+        }
+        for (int i = 0; i < RANDOM_PICKS; i++) {
+            int cell = random.nextInt(cellCount);
+            if (!isOccupied(cell)) {
+                pickAttempts = i + 1;
+                return cell;
+            }
+        }
+        pickAttempts = RANDOM_PICKS + 1; // The scan counts as one more attempt
+        return freeCellOfRank(random.nextInt(cellCount - occupiedCount));
+    }
+
+    /**
+     * @return the number of cells the last randomFreeCell() call tried, the final scan counting as one
+     */
+    public int getPickAttempts() {
+        return pickAttempts;
+    }
+
+    /**
+     * Finds the free cell of a rank, counting free cells in board order 64
+     * at a time.
+     *
+     * @param rank a number below the count of free cells
+     */
+    private int freeCellOfRank(int rank) {
+        for (int word = 0; ; word++) {
+            int free = Math.min(64, cellCount - (word << 6)) - Long.bitCount(bits[word]); // The last word may be partly off the board
+            if (rank < free) {
+                return (word << 6) + FreeCellIndex.bitOfRank(~bits[word], rank);
+            }
+            rank -= free;
+        }
+    }
+
+    /**
+     * Checks whether a column and row lie on the board.
+     *
+     * @param x the column
+     * @param y the row
+     * @return true if the position is inside the board
+     */
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < columns && y >= 0 && y < rows;
+    }
+
+    /**
+     * Packs a column and row into a cell index.
+     *
+     * @param x the column
+     * @param y the row
+     * @return the packed cell index
+     */
+    public int cellOf(int x, int y) {
+        return y * columns + x;
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return true if the cell is taken
+     */
+    public boolean isOccupied(int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Marks a cell as taken.
+     *
+     * @param cell a packed cell index
+     */
+    void occupy(int cell) {
+        if (isOccupied(cell)) {
+            return;
+        }
+        occupiedCount++;
+        bits[cell >>> 6] |= 1L << cell;
+        if (freeCells != null) {
+            freeCells.remove(cell);
+        }
+    }
+
+    /**
+     * Marks a cell as free.
+     *
+     * @param cell a packed cell index
+     */
+    void vacate(int cell) {
+        if (!isOccupied(cell)) {
+            return;
+        }
+        occupiedCount--;
+        bits[cell >>> 6] &= ~(1L << cell);
+        if (freeCells != null) {
+            freeCells.add(cell);
+        }
+    }
+
+    /**
+     * Sets or clears a cell's bit without updating the free-cell index, for
+     * changing a whole snake at once. Call recount() afterwards.
+     *
+     * @param cell a packed cell index
+     * @param occupied true to mark the cell taken, false to mark it free
+     */
+    void mark(int cell, boolean occupied) {
+        if (isOccupied(cell) == occupied) {
+            return;
+        }
+        occupiedCount += occupied ? 1 : -1;
+        bits[cell >>> 6] ^= 1L << cell;
+    }
+
+    /**
+     * Brings the free-cell index up to date after mark() calls.
+     */
+    void recount() {
+        if (freeCells != null) {
+            freeCells.rebuild();
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * The PathfindingBot class is the autopilot of the "Hunger Nagini" game.
+ * It follows a shortest path to the apple when the snake can still reach its tail afterwards,
+ * and otherwise chases its own tail to stay alive.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+
+/**
+ * PathfindingBot plans with a breadth-first search over the board that
+ * knows when each body segment will have moved away: the segment k cells
+ * from the tail frees its cell after k + 1 moves (later while the snake
+ * grows), so the path may run through it if it arrives late enough. A path
+ * to the apple is taken only if a flood fill from the apple, with the path
+ * as the new body, finds room for the whole snake; otherwise the bot heads
+ * for its tail, and as a last resort for the largest open area.
+ * <p>
+ * The searches cover a window of at most WINDOW by WINDOW cells around the
+ * head, the whole board on boards that fit in it. An apple outside the
+ * window is approached through the window cell nearest to it, and the path
+ * there is followed before the next plan. The search state is three
+ * arrays of window cells, allocated once per window size and reset with
+ * stamps, so a decision allocates nothing and costs the same on a board of
+ * any size: the cells reached and their depth in one array, the moves after
+ * which each segment is gone in another, and the queue. A path is found
+ * again by walking back through cells one move shallower. A found path is
+ * kept in a Route and followed until the apple moves or the next cell is
+ * taken. One bot can steer many snakes, each with its own Route.
+ */
+public class PathfindingBot implements Bot {
+
+    /**
+     * A path being followed by one snake.
+     */
+    public static final class Route {
+
+        private int[] cells = new int[64]; // Cells of the path, first move first
+        private int length;                // Number of cells in the path
+        private int next;                  // Index of the next cell to move to
+        private int target = -1;           // Cell the path leads to, or the apple beyond it
+
+        /**
+         * @return the cell the route leads to, -1 if there is no route
+         */
+        public int getTarget() {
+            return target;
+        }
+
+        /**
+         * Forgets the path.
+         */
+        public void clear() {
+            length = 0;
+            next = 0;
+            target = -1;
+        }
+    }
+
+    // Side of the square searched around the head; 256 by 256 cells take 768 KB of search state
+    public static final int WINDOW = 256;
+
+    private static final int[] DX = {0, 0, -1, 1};            // Column offset of 'U', 'D', 'L', 'R'
+    private static final int[] DY = {-1, 1, 0, 0};            // Row offset of 'U', 'D', 'L', 'R'
+    private static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+
+    private final Route route = new Route(); // The route of the snake steered through the Bot interface
+
+    // Search state, sized for the window and reused between decisions
+    private int windowCells = -1; // Size of the window the arrays were made for
+    private int[] queue;          // Breadth-first queue of window cells
+    private int[] reached;        // Per window cell, search plus the moves needed to reach it
+    private int[] leaves;         // Per window cell, decision plus the move after which the segment on it is gone
+    private int search;           // Base of the current search, above every older reached value
+    private int decision;         // Base of the current decision, above every older leaves value
+    private int reachedTop;       // Highest value any search may have written into reached
+    private int leavesTop;        // Highest value any decision has written into leaves
+
+    // The window of the current decision, in board columns and rows
+    private int columns;          // Board width
+    private int left;             // First column of the window
+    private int top;              // First row of the window
+    private int width;            // Columns of the window
+    private int height;           // Rows of the window
+
+    @Override
+    public char nextDirection(GameEngine game) {
+        return nextDirection(game.getSnake(), game.getApple().getCell(), route);
+    }
+
+    /**
+     * Chooses a direction for a snake heading to a target cell.
+     *
+     * @param snake the snake to steer
+     * @param target the packed cell index to head for, -1 if there is none
+     * @param route the snake's route, kept between calls
+     * @return 'U', 'D', 'L' or 'R'
+     */
+    public char nextDirection(Snake snake, int target, Route route) {
+        OccupancyGrid grid = snake.grid;
+        int head = snake.body.headCell();
+
+        // Keep following the route while it still leads to the target and its next cell is free
+        if (route.target == target && route.next < route.length && target >= 0) {
+            int cell = route.cells[route.next];
+            boolean tailLeaves = cell == snake.body.tailCell() && snake.getPendingGrowth() == 0;
+            if (isNeighbour(grid, head, cell) && (!grid.isOccupied(cell) || tailLeaves)) {
+                route.next++;
+                return directionOf(grid, head, cell, snake.direction);
+            }
+        }
+        route.clear();
+
+        prepare(snake);
+        int size = snake.body.size();
+        int goal = target >= 0 ? nearestInWindow(target) : -1; // The apple, or the way to it
+        if (goal >= 0 && search(snake, goal)) {
+            int length = depthOf(goal);
+            savePath(route, goal, length);
+            if (hasRoom(grid, route, goal == target ? size + 1 : size)) {
+                route.target = target;
+                route.next = 1;
+                return directionOf(grid, head, route.cells[0], snake.direction);
+            }
+            route.clear();
+        }
+
+        // The apple is out of reach or a trap: follow the tail, which keeps a way out open
+        int tail = snake.body.tailCell();
+        if (size > 1 && inWindow(tail) && search(snake, tail)) {
+            return directionOf(grid, head, firstStep(tail), snake.direction);
+        }
+
+        // Boxed in: take the move with the most room behind it
+        return roomiestMove(snake, head, size);
+    }
+
+    /**
+     * Places the window around the head, sizes the arrays for it and
+     * records when each segment of the snake inside it will have left its
+     * cell.
+     */
+    private void prepare(Snake snake) {
+        OccupancyGrid grid = snake.grid;
+        columns = grid.getColumns();
+        width = Math.min(columns, WINDOW);
+        height = Math.min(grid.getRows(), WINDOW);
+        int head = snake.body.headCell();
+        left = Math.max(0, Math.min(head % columns - width / 2, columns - width));
+        top = Math.max(0, Math.min(head / columns - height / 2, grid.getRows() - height));
+        int cells = width * height;
+        if (cells != windowCells) {
+            windowCells = cells;
+            queue = new int[cells];
+            reached = new int[cells];
+            leaves = new int[cells];
+            reachedTop = 0;
+            leavesTop = 0;
+        }
+
+        SnakeBody body = snake.body;
+        int size = body.size();
+        int growth = snake.getPendingGrowth();
+        if (leavesTop > Integer.MAX_VALUE - (size + growth + 1)) {
+            Arrays.fill(leaves, 0); // Values would wrap, start again
+            leavesTop = 0;
+        }
+        // Start above every value written before, also for longer snakes sharing this bot
+        decision = leavesTop;
+        leavesTop = decision + size + growth;
+        for (int k = 0; k < size; k++) {
+            int cell = body.cellAt(k);
+            if (inWindow(cell)) {
+                leaves[local(cell)] = decision + size - k + growth; // The tail leaves after one move, the neck last
+            }
+        }
+    }
+
+    /**
+     * @return the window cell nearest to a board cell, the cell itself if it is in the window
+     */
+    private int nearestInWindow(int cell) {
+        int x = Math.max(left, Math.min(cell % columns, left + width - 1));
+        int y = Math.max(top, Math.min(cell / columns, top + height - 1));
+        return y * columns + x;
+    }
+
+    /**
+     * @return true if a board cell lies in the window
+     */
+    private boolean inWindow(int cell) {
+        int x = cell % columns - left;
+        int y = cell / columns - top;
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * @return the index of a board cell in the window's arrays
+     */
+    private int local(int cell) {
+        return (cell / columns - top) * width + cell % columns - left;
+    }
+
+    /**
+     * @return the moves the current search needed to reach a cell it reached
+     */
+    private int depthOf(int cell) {
+        return reached[local(cell)] - search;
+    }
+
+    /**
+     * @return true if the current search reached a cell
+     */
+    private boolean isReached(int local) {
+        return reached[local] >= search;
+    }
+
+    /**
+     * Breadth-first search from the head to a cell. A cell may be entered if
+     * it is free, or if it holds a segment of this snake that will be gone
+     * by then. The first move cannot be a reversal.
+     *
+     * @return true if the target was reached; the depths then describe the path
+     */
+    private boolean search(Snake snake, int target) {
+        OccupancyGrid grid = snake.grid;
+        int from = local(snake.body.headCell());
+        int goal = local(target);
+        nextSearch();
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        reached[from] = search;
+        while (head < tail) {
+            int index = queue[head++];
+            int x = index % width;
+            int y = index / width;
+            int arrival = reached[index] - search + 1;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue; // Off the board or out of the window
+                }
+                int next = ny * width + nx;
+                if (isReached(next) || !passable(grid, nx, ny, next, arrival)
+                        || (index == from && Snake.isReverse(snake.direction, DIRECTIONS[d]))) {
+                    continue;
+                }
+                reached[next] = search + arrival;
+                if (next == goal) {
+                    return true;
+                }
+                queue[tail++] = next;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the window cell at a column and row can be entered after the given number of moves
+     */
+    private boolean passable(OccupancyGrid grid, int x, int y, int index, int moves) {
+        if (!grid.isOccupied((y + top) * columns + x + left)) {
+            return true;
+        }
+        // Only this snake's segments move out of the way; other snakes' cells are treated as walls
+        int leave = leaves[index] - decision;
+        return leave > 0 && leave <= moves;
+    }
+
+    /**
+     * Flood fills from the end of the planned path, with the path taken by
+     * the new body, and tells whether at least the given number of cells are
+     * reachable, which is enough room for the snake to get out again.
+     */
+    private boolean hasRoom(OccupancyGrid grid, Route route, int needed) {
+        int length = route.length;
+        int target = route.cells[length - 1];
+        int searchDepthOffset = length - 1; // Moves made when the fill starts, one less for the growth
+        nextSearch();
+        // The path is the front of the body once the apple is eaten: mark it reached so the fill stays out
+        for (int i = 0; i < length; i++) {
+            reached[local(route.cells[i])] = search;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = local(target);
+        int count = 0;
+        while (head < tail) {
+            int index = queue[head++];
+            if (++count >= needed) {
+                return true;
+            }
+            int x = index % width;
+            int y = index / width;
+            int depth = reached[index] - search + 1;
+            int arrival = searchDepthOffset + depth;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (isReached(next) || !passable(grid, nx, ny, next, arrival)) {
+                    continue;
+                }
+                reached[next] = search + depth;
+                queue[tail++] = next;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the path found by the last search into a route, walking back
+     * from the target through cells one move shallower each.
+     */
+    private void savePath(Route route, int target, int length) {
+        if (route.cells.length < length) {
+            route.cells = new int[Math.max(length, route.cells.length * 2)];
+        }
+        int cell = target;
+        for (int i = length - 1; i >= 0; i--) {
+            route.cells[i] = cell;
+            cell = previous(cell, i + 1);
+        }
+        route.length = length;
+        route.target = target;
+    }
+
+    /**
+     * @return the first cell on the path the last search found to a target
+     */
+    private int firstStep(int target) {
+        int cell = target;
+        for (int depth = depthOf(target); depth > 1; depth--) {
+            cell = previous(cell, depth);
+        }
+        return cell;
+    }
+
+    /**
+     * Finds a neighbour the last search reached one move before a cell.
+     * Any such neighbour can lead to the cell: whether a cell can be
+     * entered depends only on the move it is entered on.
+     *
+     * @param cell a cell the search reached
+     * @param depth the moves it took to reach it
+     * @return a neighbour reached after depth - 1 moves
+     */
+    private int previous(int cell, int depth) {
+        int x = cell % columns - left;
+        int y = cell / columns - top;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height && reached[ny * width + nx] == search + depth - 1) {
+                return cell + DY[d] * columns + DX[d];
+            }
+        }
+        throw new IllegalStateException("No path back from cell " + cell);
+    }
+
+    /**
+     * Picks the safe move with the largest reachable area, counting up to
+     * twice the snake's length.
+     */
+    private char roomiestMove(Snake snake, int head, int size) {
+        OccupancyGrid grid = snake.grid;
+        int x = head % columns;
+        int y = head / columns;
+        char best = snake.direction;
+        int bestRoom = -1;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (!grid.inBounds(nx, ny) || Snake.isReverse(snake.direction, DIRECTIONS[d])) {
+                continue;
+            }
+            int cell = local(ny * columns + nx);
+            if (!passable(grid, nx - left, ny - top, cell, 1)) {
+                continue;
+            }
+            int room = room(grid, cell, 2 * size + 2);
+            if (room > bestRoom) {
+                bestRoom = room;
+                best = DIRECTIONS[d];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Counts the window cells reachable from a window cell, stopping at a
+     * limit.
+     */
+    private int room(OccupancyGrid grid, int from, int limit) {
+        nextSearch();
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        reached[from] = search + 1;
+        while (head < tail && tail < limit) {
+            int index = queue[head++];
+            int x = index % width;
+            int y = index / width;
+            int arrival = reached[index] - search + 1;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (!isReached(next) && passable(grid, nx, ny, next, arrival)) {
+                    reached[next] = search + arrival;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Starts a new search above every value the last one wrote, clearing
+     * the array when the values would wrap.
+     */
+    private void nextSearch() {
+        if (reachedTop > Integer.MAX_VALUE - (windowCells + 1)) {
+            Arrays.fill(reached, 0); // Values would wrap, start again
+            reachedTop = 0;
+        }
+        search = reachedTop + 1;
+        reachedTop = search + windowCells; // No search is deeper than the window has cells
+    }
+
+    /**
+     * @return true if two cells are side by side
+     */
+    private static boolean isNeighbour(OccupancyGrid grid, int a, int b) {
+        int columns = grid.getColumns();
+        int diff = Math.abs(a - b);
+        return diff == columns || (diff == 1 && a / columns == b / columns);
+    }
+
+    /**
+     * @return the direction from a cell to a neighbouring cell
+     */
+    private static char directionOf(OccupancyGrid grid, int from, int to, char fallback) {
+        int columns = grid.getColumns();
+        if (to == from + 1) {
+            return 'R';
+        } else if (to == from - 1) {
+            return 'L';
+        } else if (to == from + columns) {
+            return 'D';
+        } else if (to == from - columns) {
+            return 'U';
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The Pickups class holds the many apples and other pickups of a large "Hunger Nagini" board.
+ * Whether a head has hit one is a single hashed lookup however many lie on the board.
+ */
+package hungernagini;
+
+import java.awt.*;
+
+/**
+ * Pickups keeps its items in dense arrays of cells and kinds, for drawing
+ * and searching, and a CellItemMap from each cell to its index there, for
+ * lookups. Taking an item moves the last one into its place.
+ * <p>
+ * Items taken during a tick are not replaced one by one: respawn() places
+ * all of them at the end of the tick in one pass, and the new items are the
+ * last ones in the arrays, so the caller can find the cells that changed.
+ */
+public class Pickups {
+
+    public static final int APPLE = 0;  // Kind: one point, one segment
+    public static final int GOLDEN = 1; // Kind: five points, three segments
+    public static final int GEM = 2;    // Kind: ten points, no growth
+
+    private static final int[] SCORES = {1, 5, 10};  // Points of each kind
+    private static final int[] GROWTHS = {1, 3, 0};  // Segments each kind adds
+    private static final Color[] COLORS = {Color.RED, Color.ORANGE, Color.CYAN}; // Colour of each kind
+    private static final int PLACEMENT_TRIES = 64;   // Random picks for one item before giving up until the next tick
+
+    private final int columns;        // Board width in cells
+    private final int cellCount;      // Cells on the board
+    private final CellItemMap index;  // Cell of each item to its position in cells and kinds
+    private final int[] cells;        // Cell of each item
+    private final int[] kinds;        // Kind of each item
+    private int count;                // Items on the board
+    private int missing;              // Items taken and not placed again yet
+
+    /**
+     * Creates an empty set of pickups; respawn() fills the board.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param target the number of items to keep on the board
+     */
+    public Pickups(int columns, int rows, int target) {
+        this.columns = columns;
+        this.cellCount = columns * rows;
+        this.index = new CellItemMap(target);
+        this.cells = new int[target];
+        this.kinds = new int[target];
+        this.missing = target;
+    }
+
+    /**
+     * Takes the item on a cell, if there is one.
+     *
+     * @param cell a packed cell index
+     * @return the kind of the item taken, or -1 if the cell was empty
+     */
+    public int take(int cell) {
+        int i = index.remove(cell);
+        if (i == CellItemMap.MISSING) {
+            return -1;
+        }
+        int kind = kinds[i];
+        int last = --count;
+        if (i != last) {
+            cells[i] = cells[last];
+            kinds[i] = kinds[last];
+            index.put(cells[i], i);
+        }
+        missing++;
+        return kind;
+    }
+
+    /**
+     * Places every missing item on a random cell free of snakes and items.
+     * An item that finds no room stays missing until the next call.
+     *
+     * @param grid the cells covered by snakes
+     * @param random the random source
+     * @return the number of items placed, the last ones in getCell()
+     */
+    public int respawn(OccupancyGrid grid, GameRandom random) {
+        int placed = 0;
+        while (missing > 0) {
+            int cell = freeCell(grid, random);
+            if (cell < 0) {
+                break; // The board is too crowded, try again next tick
+            }
+            int roll = random.nextInt(64);
+            int kind = roll == 0 ? GEM : roll <= 4 ? GOLDEN : APPLE;
+            cells[count] = cell;
+            kinds[count] = kind;
+            index.put(cell, count);
+            count++;
+            missing--;
+            placed++;
+        }
+        return placed;
+    }
+
+    /**
+     * @return a random cell with no snake and no item, or -1 if none was found
+     */
+    private int freeCell(OccupancyGrid grid, GameRandom random) {
+        if (grid.getOccupiedCount() + count >= cellCount) {
+            return -1;
+        }
+        for (int i = 0; i < PLACEMENT_TRIES; i++) {
+            int cell = random.nextInt(cellCount);
+            if (!grid.isOccupied(cell) && !index.containsKey(cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return true if an item lies on the cell
+     */
+    public boolean has(int cell) {
+        return index.containsKey(cell);
+    }
+
+    /**
+     * Finds the item closest to a cell, by Manhattan distance.
+     *
+     * @param cell a packed cell index
+     * @return the cell of the nearest item, or -1 if there is none
+     */
+    public int nearest(int cell) {
+        int x = cell % columns;
+        int y = cell / columns;
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int item = cells[i];
+            int distance = Math.abs(item % columns - x) + Math.abs(item / columns - y);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = item;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Draws the items inside the clip.
+     *
+     * @param g the Graphics to draw on, in board coordinates
+     */
+    public void draw(Graphics g) {
+        for (int i = 0; i < count; i++) {
+            int x = cells[i] % columns * Map.UNIT_SIZE;
+            int y = cells[i] / columns * Map.UNIT_SIZE;
+            if (g.hitClip(x, y, Map.UNIT_SIZE, Map.UNIT_SIZE)) {
+                g.setColor(COLORS[kinds[i]]);
+                g.fillOval(x, y, Map.UNIT_SIZE, Map.UNIT_SIZE);
+            }
+        }
+    }
+
+    /**
+     * @param kind an item kind
+     * @return the points the kind is worth
+     */
+    public static int scoreOf(int kind) {
+        return SCORES[kind];
+    }
+
+    /**
+     * @param kind an item kind
+     * @return the segments the kind adds to a snake
+     */
+    public static int growthOf(int kind) {
+        return GROWTHS[kind];
+    }
+
+    /**
+     * @return the number of items on the board
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param i an index below getCount()
+     * @return the cell of the item
+     */
+    public int getCell(int i) {
+        return cells[i];
+    }
+
+    /**
+     * @param i an index below getCount()
+     * @return the kind of the item
+     */
+    public int getKind(int i) {
+        return kinds[i];
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The Protocol class defines the messages a "Hunger Nagini" server sends to its clients.
+ * A client gets the full state once when a game starts and a few bytes per tick after that.
+ */
+package hungernagini;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Protocol encodes and decodes server messages. Each starts with a type
+ * byte:
+ * <pre>
+ *   GAME   columns, rows and snapshot size as ints, then a Snapshot
+ *   STEP   a flags byte, then varints:
+ *            if MOVED:  head cell, removed tail cell + 1
+ *            if ATE:    apple cell + 1 (0 on a full board), score
+ * </pre>
+ * A normal step is 4 to 6 bytes. Clients send one byte per command: a
+ * direction ('U', 'D', 'L', 'R'), NEW_GAME or WATCH. A watching client
+ * gets a GAME whenever the game it follows restarts or it had to catch up,
+ * with STEPs in between.
+ */
+public final class Protocol {
+
+    public static final int DEFAULT_PORT = 7777; // Port the server listens on unless told otherwise
+    public static final byte NEW_GAME = 'N';     // Client command that starts a new game
+    public static final byte WATCH = 'W';        // Client command that follows another client's game
+
+    static final byte GAME = 1;    // Message with the whole state of a new game
+    static final byte STEP = 2;    // Message with the changes of one tick
+    static final int RUNNING = 1;  // STEP flag: the game goes on
+    static final int WON = 2;      // STEP flag: the snake filled the board
+    static final int MOVED = 4;    // STEP flag: the snake moved
+    static final int ATE = 8;      // STEP flag: the snake ate the apple
+
+    static final int MAX_STEP_SIZE = 2 + 4 * 5; // Type, flags and four varints of at most five bytes
+
+    private Protocol() {
+    }
+
+    /**
+     * @param engine a game
+     * @return the size of the GAME message for the game
+     */
+    public static int gameSize(GameEngine engine) {
+        return 1 + 12 + Snapshot.size(engine);
+    }
+
+    /**
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @return the largest size of a GAME message on the board, when the snake fills it
+     */
+    public static long maxGameSize(int columns, int rows) {
+        return 1 + 12 + Snapshot.maxSize(columns, rows);
+    }
+
+    /**
+     * Writes a GAME message.
+     *
+     * @param engine the new game
+     * @param out the buffer, with at least gameSize(engine) bytes remaining
+     */
+    public static void writeGame(GameEngine engine, ByteBuffer out) {
+        out.put(GAME);
+        out.putInt(engine.getColumns());
+        out.putInt(engine.getRows());
+        out.putInt(Snapshot.size(engine));
+        Snapshot.write(engine, out);
+    }
+
+    /**
+     * Writes the STEP message for the step the game has just played.
+     *
+     * @param engine the game after step()
+     * @param out the buffer, with at least MAX_STEP_SIZE bytes remaining
+     */
+    public static void writeStep(GameEngine engine, ByteBuffer out) {
+        Snake snake = engine.getSnake();
+        boolean moved = engine.getDirtyCount() > 0; // A crash leaves nothing to repaint
+        int flags = (engine.isRunning() ? RUNNING : 0) | (engine.isWon() ? WON : 0)
+                | (moved ? MOVED : 0) | (engine.isScoreChanged() ? ATE : 0);
+        out.put(STEP);
+        out.put((byte) flags);
+        if (moved) {
+            ReplayWriter.putVarint(out, snake.body.headCell());
+            ReplayWriter.putVarint(out, snake.getRemovedTail() + 1);
+        }
+        if (engine.isScoreChanged()) {
+            Apple apple = engine.getApple();
+            ReplayWriter.putVarint(out, apple.isBoardFull() ? 0 : apple.getCell() + 1);
+            ReplayWriter.putVarint(out, engine.getScore());
+        }
+    }
+
+    /**
+     * Reads a GAME message if a complete one is at the position of the
+     * buffer. Otherwise the buffer is left as it was.
+     *
+     * @param in the received bytes
+     * @return the new game, or null if the message is not complete or is not a GAME message
+     */
+    public static GameEngine readGame(ByteBuffer in) {
+        if (in.remaining() < 13 || in.get(in.position()) != GAME) {
+            return null;
+        }
+        int start = in.position();
+        in.get();
+        int columns = in.getInt();
+        int rows = in.getInt();
+        int size = in.getInt();
+        if (in.remaining() < size) {
+            in.position(start); // Wait for the rest of the snapshot
+            return null;
+        }
+        GameEngine engine = new GameEngine(columns, rows, 0);
+        Snapshot.read(engine, in);
+        return engine;
+    }
+
+    /**
+     * Loads a GAME message into an existing game if a complete one is at the
+     * position of the buffer. Otherwise the buffer is left as it was.
+     *
+     * @param engine the game to overwrite, on the same board size as the message
+     * @param in the received bytes
+     * @return true if the game was loaded
+     */
+    public static boolean reloadGame(GameEngine engine, ByteBuffer in) {
+        if (in.remaining() < 13 || in.get(in.position()) != GAME) {
+            return false;
+        }
+        int start = in.position();
+        in.get();
+        int columns = in.getInt();
+        int rows = in.getInt();
+        int size = in.getInt();
+        if (in.remaining() < size) {
+            in.position(start); // Wait for the rest of the snapshot
+            return false;
+        }
+        if (columns != engine.getColumns() || rows != engine.getRows()) {
+            throw new IllegalArgumentException("Game of " + columns + "x" + rows + " sent for a "
+                    + engine.getColumns() + "x" + engine.getRows() + " board");
+        }
+        Snapshot.read(engine, in);
+        return true;
+    }
+
+    /**
+     * Applies a STEP message if a complete one is at the position of the
+     * buffer. Otherwise the buffer is left as it was.
+     *
+     * @param engine the client's copy of the game, or null to skip the step
+     * @param in the received bytes
+     * @return true if a step was applied
+     */
+    public static boolean readStep(GameEngine engine, ByteBuffer in) {
+        if (in.remaining() < 2 || in.get(in.position()) != STEP) {
+            return false;
+        }
+        int start = in.position();
+        int head;
+        int removedTail;
+        int appleCell;
+        int score;
+        int flags;
+        try {
+            in.get();
+            flags = in.get();
+            head = (flags & MOVED) != 0 ? (int) ReplayWriter.getVarint(in) : -1;
+            removedTail = (flags & MOVED) != 0 ? (int) ReplayWriter.getVarint(in) - 1 : -1;
+            appleCell = (flags & ATE) != 0 ? (int) ReplayWriter.getVarint(in) - 1 : -1;
+            score = (flags & ATE) != 0 ? (int) ReplayWriter.getVarint(in) : 0;
+        } catch (BufferUnderflowException e) {
+            in.position(start); // Wait for the rest of the message
+            return false;
+        }
+        if (engine == null) {
+            return true;
+        }
+
+        engine.beginRemoteStep();
+        if ((flags & MOVED) != 0) {
+            engine.applyRemoteMove(head, removedTail);
+        }
+        if ((flags & ATE) != 0) {
+            engine.applyRemoteApple(appleCell, score);
+        }
+        engine.applyRemoteResult((flags & RUNNING) != 0, (flags & WON) != 0);
+        return true;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The RenderCache class holds the drawing resources of the "Hunger Nagini" game.
+ * Fonts, text widths, colours and sprites are created once, so painting a frame
+ * in the steady state allocates nothing.
+ */
+package hungernagini;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * RenderCache is shared by Main, Snake and Apple. It is created on first use
+ * through get().
+ */
+public class RenderCache {
+
+    // Families tried for each look, in order; Windows ships the first, Linux desktops often one of the others
+    private static final String[] SCRIPT_FAMILIES = {"Segoe Script", "URW Chancery L", "Z003", "TeX Gyre Chorus"};
+    private static final String[] HANDWRITTEN_FAMILIES = {"Ink Free", "Comic Neue", "Comic Sans MS"};
+    private static final String[] PLAIN_FAMILIES = {"Helvetica", "Liberation Sans", "Arial"};
+
+    // Fonts used by the screens of the game
+    public final Font titleFont = resolveFont(SCRIPT_FAMILIES, Font.BOLD, 70);
+    public final Font largeFont = resolveFont(HANDWRITTEN_FAMILIES, Font.BOLD, 75);
+    public final Font mediumFont = largeFont.deriveFont(40f);
+    public final Font smallFont = largeFont.deriveFont(20f);
+    public final Font aboutTitleFont = resolveFont(PLAIN_FAMILIES, Font.BOLD, 60);
+    public final Font aboutFont = resolveFont(PLAIN_FAMILIES, Font.PLAIN, 18);
+    public final Font debugFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    // Score shown while playing and on the game-over screen
+    public final TextImage scoreText = new TextImage(mediumFont, Color.WHITE);
+    public final TextImage finalScoreText = new TextImage(mediumFont, Color.RED);
+
+    // Best scores shown on the menu
+    public final TextImage highScoreText = new TextImage(smallFont, Color.YELLOW);
+
+    private static final int PALETTE_SIZE = 64; // Number of precomputed body colours, a power of two
+
+    private final BufferedImage[] segmentSprites = new BufferedImage[PALETTE_SIZE]; // Ovals in precomputed greens
+    private final BufferedImage[] headSprites = new BufferedImage[4]; // Head pentagon facing U, D, L, R
+    private final Graphics2D measure; // Scratch graphics used to get font metrics
+    private final HashMap<Font, HashMap<String, Integer>> widths = new HashMap<>(); // Cached text widths
+
+    /**
+     * Holder so the cache is built on first use, once, by whichever thread
+     * gets there first. Main asks the Startup thread to build it while the
+     * window is being created; a paint that comes earlier waits for it.
+     */
+    private static class Holder {
+        static final RenderCache INSTANCE = new RenderCache();
+    }
+
+    /**
+     * @return the shared cache
+     */
+    public static RenderCache get() {
+        return Holder.INSTANCE;
+    }
+
+    private RenderCache() {
+        measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+        // Same ranges as the random colours the body used to get every frame
+        Random random = new Random(0);
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            int red = random.nextInt(100); // Red color range: 0 - 99
+            int green = random.nextInt(100) + 155; // Green color range: 155 - 255
+            int blue = random.nextInt(100); // Blue color range: 0 - 99
+            segmentSprites[i] = renderSegment(new Color(red, green, blue));
+        }
+
+        headSprites[0] = renderHead(-Math.PI / 2); // Up
+        headSprites[1] = renderHead(Math.PI / 2);  // Down
+        headSprites[2] = renderHead(Math.PI);      // Left
+        headSprites[3] = renderHead(0);            // Right
+
+        warmUp(titleFont, largeFont, mediumFont, smallFont);
+    }
+
+    /**
+     * Picks the first family of a list that AWT can find, installed or as
+     * an alias such as Helvetica for SansSerif. Looking a font up the first
+     * time loads the font configuration of the system, which is slow on
+     * Linux; doing it here keeps that off the first paint. A family AWT
+     * cannot find comes back as Dialog, which is also the result if none of
+     * the list is found, the fallback AWT would have used anyway.
+     */
+    private static Font resolveFont(String[] families, int style, int size) {
+        for (String family : families) {
+            Font font = new Font(family, style, size);
+            if (!font.getFamily(Locale.ROOT).equals(Font.DIALOG)) {
+                return font;
+            }
+        }
+        return new Font(Font.DIALOG, style, size);
+    }
+
+    /**
+     * Rasterises the characters of the menu in each font, so the glyph
+     * caches are filled before the first frame needs them.
+     */
+    private static void warmUp(Font... fonts) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scratch.createGraphics();
+        for (Font font : fonts) {
+            g.setFont(font);
+            g.drawString("HungerNaginiPress0123456789toPlayforAboutQuitResumeyourlastgame:", 0, 0);
+        }
+        g.dispose();
+    }
+
+    /**
+     * Draws the snake's head as a green pentagon pointing at the given angle.
+     */
+    private static BufferedImage renderHead(double angleOffset) {
+        BufferedImage sprite = new BufferedImage(Map.UNIT_SIZE, Map.UNIT_SIZE, BufferedImage.TYPE_INT_ARGB);
+        int center = Map.UNIT_SIZE / 2; // Center of pentagon
+        int radius = Map.UNIT_SIZE / 2; // Radius for pentagon
+
+        // Calculate points for a pentagon
+        int[] xPoints = new int[5];
+        int[] yPoints = new int[5];
+        for (int j = 0; j < 5; j++) {
+            double angle = 2 * Math.PI / 5 * j + angleOffset; // Calculate angle for each point
+            xPoints[j] = (int) (center + radius * Math.cos(angle)); // Calculate x coordinate
+            yPoints[j] = (int) (center + radius * Math.sin(angle)); // Calculate y coordinate
+        }
+
+        Graphics2D g = sprite.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.GREEN); // The snake's head is green
+        g.fillPolygon(xPoints, yPoints, 5);
+        g.dispose();
+        return sprite;
+    }
+
+    /**
+     * Draws a body segment as an antialiased oval of the given colour.
+     */
+    private static BufferedImage renderSegment(Color color) {
+        BufferedImage sprite = new BufferedImage(Map.UNIT_SIZE, Map.UNIT_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = sprite.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(color);
+        g.fillOval(0, 0, Map.UNIT_SIZE, Map.UNIT_SIZE);
+        g.dispose();
+        return sprite;
+    }
+
+    /**
+     * @param direction 'U', 'D', 'L' or 'R'
+     * @return the pre-rendered head facing that way
+     */
+    public BufferedImage headSprite(char direction) {
+        switch (direction) {
+            case 'U':
+                return headSprites[0];
+            case 'D':
+                return headSprites[1];
+            case 'L':
+                return headSprites[2];
+            default:
+                return headSprites[3];
+        }
+    }
+
+    /**
+     * Picks a pre-rendered body segment. Mixing the segment's cell with the
+     * frame number keeps the shimmer of the old per-frame random colours
+     * without creating any, and copying a sprite is much cheaper than
+     * rasterising an antialiased oval.
+     *
+     * @param cell the packed cell index of the segment
+     * @param frame a counter that changes every frame
+     * @return an oval sprite in one of the precomputed colours
+     */
+    public BufferedImage segmentSprite(int cell, int frame) {
+        return segmentSprites[paletteIndex(cell, frame)];
+    }
+
+    private static int paletteIndex(int cell, int frame) {
+        int hash = (cell * 0x9E3779B1) ^ (frame * 0x85EBCA6B);
+        return (hash ^ (hash >>> 16)) & (PALETTE_SIZE - 1);
+    }
+
+    /**
+     * @param font the font to measure with
+     * @return the metrics of the font
+     */
+    public FontMetrics metrics(Font font) {
+        return measure.getFontMetrics(font);
+    }
+
+    /**
+     * Returns the width of a piece of text, measured only the first time it is asked for.
+     *
+     * @param font the font of the text
+     * @param text the text, usually a constant
+     * @return the width of the text in pixels
+     */
+    public int stringWidth(Font font, String text) {
+        HashMap<String, Integer> forFont = widths.get(font);
+        if (forFont == null) {
+            forFont = new HashMap<>();
+            widths.put(font, forFont);
+        }
+        Integer width = forFont.get(text);
+        if (width == null) {
+            width = metrics(font).stringWidth(text);
+            forFont.put(text, width);
+        }
+        return width;
+    }
+
+    /**
+     * A line of text showing a number or a fixed string, rendered into an
+     * image only when the number or the string changes.
+     */
+    public static class TextImage {
+
+        private final Font font;     // Font of the text
+        private final Color color;   // Color of the text
+        private int value = -1;      // Number currently rendered, -1 if none
+        private String text;         // String currently rendered, null if none
+        private BufferedImage image; // The rendered text, reused while it is wide enough
+        private int width;           // Width of the rendered text
+        private int ascent;          // Distance from the top of the image to the baseline
+
+        TextImage(Font font, Color color) {
+            this.font = font;
+            this.color = color;
+        }
+
+        /**
+         * Draws "Score: value" centered horizontally.
+         *
+         * @param g the Graphics object to draw with
+         * @param value the score to show
+         * @param areaWidth the width to center the text in
+         * @param baseline the y coordinate of the text baseline
+         */
+        public void drawCentered(Graphics g, int value, int areaWidth, int baseline) {
+            if (value != this.value || image == null) {
+                render("Score: " + value);
+                this.value = value;
+            }
+            g.drawImage(image, (areaWidth - width) / 2, baseline - ascent, null);
+        }
+
+        /**
+         * Draws a string centered horizontally. The string is rendered again
+         * only when a different String object is passed, so callers keep the
+         * same one while the text stays the same.
+         *
+         * @param g the Graphics object to draw with
+         * @param text the text to show
+         * @param areaWidth the width to center the text in
+         * @param baseline the y coordinate of the text baseline
+         */
+        public void drawCentered(Graphics g, String text, int areaWidth, int baseline) {
+            if (text != this.text || image == null) {
+                render(text);
+                this.text = text;
+            }
+            g.drawImage(image, (areaWidth - width) / 2, baseline - ascent, null);
+        }
+
+        private void render(String text) {
+            FontMetrics metrics = RenderCache.get().metrics(font);
+            width = metrics.stringWidth(text);
+            ascent = metrics.getAscent();
+            int height = metrics.getHeight();
+            if (image == null || image.getWidth() < width || image.getHeight() < height) {
+                image = new BufferedImage(Math.max(width, 1) * 2, height, BufferedImage.TYPE_INT_ARGB);
+            }
+
+            Graphics2D g = image.createGraphics();
+            g.setComposite(AlphaComposite.Clear); // Wipe the previous number
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(font);
+            g.setColor(color);
+            g.drawString(text, 0, ascent);
+            g.dispose();
+            this.value = -1;
+            this.text = null;
+        }
+    }
+}
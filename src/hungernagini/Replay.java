@@ -0,0 +1,264 @@
+/*
+ * The Replay class plays back a "Hunger Nagini" game recorded by ReplayWriter.
+ * The file is memory-mapped and read in place, so replays can be opened and scanned in bulk
+ * without building objects for their records.
+ */
+package hungernagini;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Replay indexes the keyframes of a replay file when it is opened. seek()
+ * restores the last keyframe at or before the wanted tick and simulates the
+ * few remaining ticks with the recorded turns, so any tick is reached in at
+ * most one keyframe interval of steps, or as many steps as the snake had
+ * segments. A file cut short by a crash is read up to its last complete
+ * record.
+ */
+public class Replay {
+
+    /**
+     * Receives the turns of a replay from forEachTurn().
+     */
+    public interface TurnVisitor {
+
+        /**
+         * @param tick the tick count of the game before the step that turned
+         * @param direction the new direction
+         */
+        void turn(long tick, char direction);
+    }
+
+    private final ByteBuffer data;   // The mapped file
+    private final long seed;         // Seed of the recorded game
+    private final int columns;       // Board width in cells
+    private final int rows;          // Board height in cells
+    private final int recordsStart;  // Offset of the first record
+    private final int recordsEnd;    // Offset after the last complete record
+    private long length;             // Tick count at the end of the recording
+    private int turnCount;           // Number of turn records
+    private long[] keyframeTicks = new long[16]; // Tick of each keyframe, ascending
+    private int[] keyframeOffsets = new int[16]; // Offset of each keyframe's snapshot
+    private int keyframeCount;       // Number of keyframes
+
+    // Playback position
+    private GameEngine engine;       // The game being played back, null before the first seek
+    private final ByteBuffer reader; // View of the file used by playback
+    private int cursor;              // Offset of the next record
+    private long nextTick;           // Tick of the next record, or -1 after the last one
+    private int nextType;            // Low three bits of the next record's varint
+
+    /**
+     * Opens and indexes a replay file.
+     *
+     * @param file the file written by ReplayWriter
+     * @throws IOException if the file cannot be read or is not a replay
+     */
+    public Replay(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data = mapped; // The mapping stays valid after the channel is closed
+        }
+        try {
+            if (data.getInt() != ReplayWriter.MAGIC || data.getShort() != ReplayWriter.VERSION) {
+                throw new IOException(file + " is not a replay file");
+            }
+            seed = data.getLong();
+            columns = data.getInt();
+            rows = data.getInt();
+            data.getInt(); // Keyframe interval, only informative since keyframes are indexed
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is not a replay file");
+        }
+        recordsStart = data.position();
+        recordsEnd = index();
+        reader = data.duplicate();
+    }
+
+    /**
+     * Reads all the records once, remembering where the keyframes are.
+     *
+     * @return the offset after the last complete record
+     */
+    private int index() {
+        ByteBuffer in = data.duplicate();
+        long tick = 0;
+        int end = in.position();
+        try {
+            while (in.hasRemaining()) {
+                long value = ReplayWriter.getVarint(in);
+                tick += value >>> 3;
+                if ((value & 1) == 0) {
+                    turnCount++;
+                } else if ((value >>> 1 & 3) == ReplayWriter.EVENT_KEYFRAME) {
+                    int size = (int) ReplayWriter.getVarint(in);
+                    if (size > in.remaining()) {
+                        break; // Keyframe cut off
+                    }
+                    addKeyframe(tick, in.position());
+                    in.position(in.position() + size);
+                } else {
+                    end = in.position();
+                    length = tick;
+                    break; // End of the game
+                }
+                end = in.position();
+                length = tick;
+            }
+        } catch (BufferUnderflowException e) {
+            // The last record was cut off, keep what came before it
+        }
+        return end;
+    }
+
+    /**
+     * Appends an entry to the keyframe index.
+     */
+    private void addKeyframe(long tick, int offset) {
+        if (keyframeCount == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+        }
+        keyframeTicks[keyframeCount] = tick;
+        keyframeOffsets[keyframeCount] = offset;
+        keyframeCount++;
+    }
+
+    /**
+     * Moves the playback to a tick.
+     *
+     * @param tick the tick to go to, clamped to the length of the replay
+     * @return the game as it was after that many ticks
+     */
+    public GameEngine seek(long tick) {
+        tick = Math.max(0, Math.min(tick, length));
+        int k = Arrays.binarySearch(keyframeTicks, 0, keyframeCount, tick);
+        if (k < 0) {
+            k = -k - 2; // The last keyframe before the tick, or -1
+        }
+
+        // Restart from a keyframe, unless playback is already between it and the tick
+        long from = k < 0 ? 0 : keyframeTicks[k];
+        if (engine == null || engine.getTicks() > tick || engine.getTicks() < from) {
+            if (k < 0) {
+                engine = new GameEngine(columns, rows, seed); // Start of the game
+                cursor = recordsStart;
+                nextTick = 0;
+            } else {
+                if (engine == null) {
+                    engine = new GameEngine(columns, rows, seed);
+                }
+                ByteBuffer in = data.duplicate();
+                in.position(keyframeOffsets[k]);
+                Snapshot.read(engine, in);
+                cursor = in.position();
+                nextTick = from;
+            }
+            readRecord();
+        }
+
+        // Simulate the remaining ticks with the recorded turns
+        while (engine.getTicks() < tick && engine.isRunning()) {
+            char direction = engine.getSnake().direction;
+            while (nextTick == engine.getTicks()) {
+                if ((nextType & 1) == 0) {
+                    direction = ReplayWriter.DIRECTIONS.charAt(nextType >>> 1);
+                }
+                readRecord();
+            }
+            engine.step(direction);
+        }
+        return engine;
+    }
+
+    /**
+     * Decodes the record at the cursor into nextTick and nextType, and moves
+     * the cursor past it.
+     */
+    private void readRecord() {
+        if (cursor >= recordsEnd) {
+            nextTick = -1;
+            return;
+        }
+        ByteBuffer in = reader;
+        in.position(cursor);
+        long value = ReplayWriter.getVarint(in);
+        nextTick += value >>> 3;
+        nextType = (int) (value & 7);
+        if (nextType == (ReplayWriter.EVENT_KEYFRAME << 1 | 1)) {
+            int size = (int) ReplayWriter.getVarint(in);
+            in.position(in.position() + size); // Playback already has this state
+        }
+        cursor = in.position();
+    }
+
+    /**
+     * Passes every turn of the replay to a visitor, straight from the mapped
+     * file and without simulating the game.
+     *
+     * @param visitor the visitor
+     */
+    public void forEachTurn(TurnVisitor visitor) {
+        ByteBuffer in = data.duplicate();
+        in.position(recordsStart);
+        long tick = 0;
+        while (in.position() < recordsEnd) {
+            long value = ReplayWriter.getVarint(in);
+            tick += value >>> 3;
+            if ((value & 1) == 0) {
+                visitor.turn(tick, ReplayWriter.DIRECTIONS.charAt((int) (value >>> 1 & 3)));
+            } else if ((value >>> 1 & 3) == ReplayWriter.EVENT_KEYFRAME) {
+                int size = (int) ReplayWriter.getVarint(in);
+                in.position(in.position() + size);
+            }
+        }
+    }
+
+    /**
+     * @return the seed of the recorded game
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the board width in cells
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the board height in cells
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of ticks recorded
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of turns recorded
+     */
+    public int getTurnCount() {
+        return turnCount;
+    }
+
+    /**
+     * @return the number of keyframes in the file
+     */
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+}
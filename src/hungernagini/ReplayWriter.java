@@ -0,0 +1,166 @@
+/*
+ * The ReplayWriter class records a "Hunger Nagini" game to a compact append-only file.
+ * A game is fully described by its seed and the ticks at which the direction changed,
+ * with a snapshot of the state written every few hundred ticks so replays can seek quickly.
+ */
+package hungernagini;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ReplayWriter appends the records of one game to a file. The file starts
+ * with a header (magic, version, seed, board size, keyframe interval),
+ * followed by records that each begin with one varint:
+ * <pre>
+ *   bit 0      0 for a turn, 1 for an event
+ *   bits 1-2   the new direction of a turn, or the kind of an event
+ *   bits 3-    ticks since the previous record
+ * </pre>
+ * A keyframe event is followed by a varint length and a Snapshot, the end
+ * event closes the file. A turn is usually one byte. Records are collected
+ * in a buffer and written in large blocks.
+ * <p>
+ * A Snapshot holds the snake's cells, so a keyframe grows with the snake.
+ * Keyframes are written KEYFRAME_INTERVAL ticks apart, or as many ticks
+ * apart as the snake has segments if that is more. Keyframes then add at
+ * most 4 bytes per tick to a replay however long the snake gets, and a seek
+ * simulates no more steps after a keyframe than restoring it copies cells.
+ */
+public class ReplayWriter implements Closeable {
+
+    static final int MAGIC = 0x484E5250;        // "HNRP"
+    static final short VERSION = 2;             // Format version, checked by Replay; 1 had keyframes with the free-cell index
+    static final int KEYFRAME_INTERVAL = 512;   // Fewest ticks between two keyframes
+    static final int EVENT_KEYFRAME = 0;        // Event kind of a keyframe
+    static final int EVENT_END = 1;             // Event kind of the end of the game
+    static final String DIRECTIONS = "UDLR";    // Direction codes used in turn records
+
+    private final FileChannel channel; // The file being appended to
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024); // Records not written to the file yet
+    private long recordTick;           // Tick of the previous record
+    private long lastTick;             // Tick count after the last recorded step
+    private long keyframeTick;         // Tick of the last keyframe, 0 for the start of the game
+
+    /**
+     * Creates a new replay file and writes its header.
+     *
+     * @param file the file to create, it must not exist yet
+     * @param seed the seed the game was created with
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @throws IOException if the file cannot be created
+     */
+    public ReplayWriter(Path file, long seed, int columns, int rows) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putLong(seed);
+        buffer.putInt(columns);
+        buffer.putInt(rows);
+        buffer.putInt(KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Records a step, called just before the game runs it. Writes a keyframe
+     * when one is due and a turn if the direction changes.
+     *
+     * @param engine the game before the step
+     * @param direction the direction the step is played with
+     * @throws IOException if the file cannot be written
+     */
+    public void step(GameEngine engine, char direction) throws IOException {
+        long tick = engine.getTicks();
+        if (tick - keyframeTick >= Math.max(KEYFRAME_INTERVAL, engine.getLength())) {
+            keyframeTick = tick;
+            int size = Snapshot.size(engine);
+            record(tick, EVENT_KEYFRAME << 1 | 1);
+            ensure(5 + size);
+            putVarint(buffer, size);
+            Snapshot.write(engine, buffer);
+        }
+        if (direction != engine.getSnake().direction) {
+            record(tick, DIRECTIONS.indexOf(direction) << 1);
+        }
+        lastTick = tick + 1; // The step is about to run
+    }
+
+    /**
+     * Writes the end of the game and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            record(lastTick, EVENT_END << 1 | 1);
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Appends the varint that starts a record.
+     */
+    private void record(long tick, int type) throws IOException {
+        ensure(10);
+        putVarint(buffer, (tick - recordTick) << 3 | type);
+        recordTick = tick;
+    }
+
+    /**
+     * Makes room for the given number of bytes, writing out the buffer or
+     * growing it for a large keyframe.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocate(bytes);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint, 7 bits per byte.
+     */
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     */
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * The SearchBot class is a look-ahead computer player for the "Hunger Nagini" game.
+ * It plays thousands of short random continuations of the game before every move,
+ * spread over several threads, and takes the move whose continuations went best.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SearchBot runs a Monte-Carlo tree search (UCT) from the current game on
+ * SearchStates. Each worker thread grows a tree of its own from the same
+ * root and the root visit counts are added up at the end, so the threads
+ * share nothing while they search. A tree node stands for a line of moves,
+ * not a position: every iteration reseeds the state's random source, so
+ * apples eaten inside the tree land somewhere new each time and the counts
+ * average over where they may appear.
+ * <p>
+ * An iteration walks down the tree with play(), adds one node, plays a
+ * rollout that mostly heads for the apple, and then undo()es back to the
+ * root, so no state is copied inside the search. It earns the discounted
+ * value of the first apple it eats and loses more if it crashes. Nodes live in arrays that
+ * each worker allocates once and reuses for every move.
+ * <p>
+ * A move stops searching at a time budget or an iteration count, whichever
+ * comes first. With no time budget the bot is deterministic for a given
+ * game state and seed.
+ */
+public class SearchBot implements Bot, AutoCloseable {
+
+    private static final int MAX_NODES = 1 << 15;   // Tree nodes per worker and move
+    private static final int MAX_TREE_DEPTH = 8;    // Moves chosen by the tree before the rollout takes over
+    private static final double EXPLORATION = 1.0;  // UCT weight of rarely tried moves
+    private static final double DEATH_PENALTY = 3;  // Reward lost by a continuation that crashes
+    private static final double DISCOUNT = 0.9;     // Weight of a reward one move later, so sooner is better
+    private static final int RANDOM_MOVES = 4;      // One rollout move in this many is random instead of greedy
+
+    /**
+     * The search of one thread.
+     */
+    private final class Worker implements Runnable {
+
+        private final SearchState state;      // The game searched, back at the root between iterations
+        private GameRandom random;            // Reseeds the state and picks random rollout moves, split for each move
+        private final int[] visits = new int[MAX_NODES];           // Iterations through each node
+        private final double[] value = new double[MAX_NODES];      // Sum of their rewards
+        private final int[] children = new int[MAX_NODES * 4];     // Child of each node and action, 0 if none
+        private final int[] path = new int[MAX_TREE_DEPTH + 1];    // Nodes of the current iteration
+        private int nodes;                    // Nodes in use, the root is node 0
+        private long deadline;                // System.nanoTime() to stop at, or Long.MAX_VALUE
+        private double reward;                // Discounted reward of the current iteration
+        private double weight;                // Discount of the next move of the current iteration
+        private boolean fed;                  // True once the current iteration has eaten an apple
+
+        Worker(int columns, int rows) {
+            this.state = new SearchState(columns, rows);
+        }
+
+        /**
+         * Sets up a search of a game.
+         */
+        void prepare(GameEngine game, GameRandom random, long deadline) {
+            state.copyFrom(game);
+            this.random = random;
+            this.deadline = deadline;
+            Arrays.fill(children, 0, nodes * 4, 0);
+            nodes = 1;
+            visits[0] = 0;
+            value[0] = 0;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < maxIterations; i++) {
+                if ((i & 63) == 0 && System.nanoTime() >= deadline) {
+                    return;
+                }
+                iterate();
+            }
+        }
+
+        /**
+         * Runs one iteration: selection, expansion, rollout and backup.
+         */
+        private void iterate() {
+            reward = 0;
+            weight = 1;
+            fed = false;
+            state.setRandomState(random.nextLong());
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+            while (state.isAlive() && length <= MAX_TREE_DEPTH) {
+                int action = select(node);
+                int child = children[node * 4 + action];
+                play(action);
+                if (child == 0) {
+                    if (nodes < MAX_NODES) {
+                        child = nodes++;
+                        children[node * 4 + action] = child;
+                        visits[child] = 0;
+                        value[child] = 0;
+                        path[length++] = child;
+                    }
+                    break;
+                }
+                node = child;
+                path[length++] = node;
+            }
+            rollout();
+
+            for (int i = 0; i < length; i++) {
+                visits[path[i]]++;
+                value[path[i]] += reward;
+            }
+            while (state.getDepth() > 0) {
+                state.undo();
+            }
+        }
+
+        /**
+         * Picks the action to try from a node: an untried one first, then
+         * the one with the best upper confidence bound. Moves that crash at
+         * once are never tried, their penalty would only drag down the value
+         * of the line leading here.
+         */
+        private int select(int node) {
+            int reversal = state.getDirection() ^ 1;
+            double logVisits = Math.log(Math.max(1, visits[node]));
+            int best = state.getDirection(); // Every move crashes, the snake keeps going
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int action = 0; action < 4; action++) {
+                if (action == reversal || !state.isSafe(action)) {
+                    continue; // Same move as going straight on, or a crash
+                }
+                int child = children[node * 4 + action];
+                if (child == 0 || visits[child] == 0) {
+                    return action;
+                }
+                double score = value[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = action;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays on from the new node with mostly greedy moves.
+         */
+        private void rollout() {
+            int columns = state.getColumns();
+            for (int i = 0; i < rolloutDepth && state.isAlive(); i++) {
+                int head = state.getHead();
+                int apple = state.getApple();
+                int reversal = state.getDirection() ^ 1;
+                int action = state.getDirection(); // Keep going if every move crashes
+                if (random.nextInt(RANDOM_MOVES) == 0) {
+                    int pick = random.nextInt(4);
+                    for (int k = 0; k < 4; k++, pick = (pick + 1) & 3) {
+                        if (pick != reversal && state.isSafe(pick)) {
+                            action = pick;
+                            break;
+                        }
+                    }
+                } else {
+                    int bestDistance = Integer.MAX_VALUE;
+                    for (int a = 0; a < 4; a++) {
+                        if (a == reversal || !state.isSafe(a)) {
+                            continue;
+                        }
+                        int x = head % columns + (a == 2 ? -1 : a == 3 ? 1 : 0);
+                        int y = head / columns + (a == 0 ? -1 : a == 1 ? 1 : 0);
+                        int distance = Math.abs(apple % columns - x) + Math.abs(apple / columns - y);
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            action = a;
+                        }
+                    }
+                }
+                play(action);
+            }
+        }
+
+        /**
+         * Plays a move and adds what it earned to the reward. Only the first
+         * apple is rewarded, the moves after it only check that the snake
+         * survives eating it.
+         */
+        private void play(int action) {
+            int score = state.getScore();
+            if (state.play(action)) {
+                if (!fed && state.getScore() != score) {
+                    reward += weight;
+                    fed = true;
+                }
+            } else if (state.isWon()) {
+                reward += weight;
+            } else {
+                reward -= weight * DEATH_PENALTY;
+            }
+            weight *= DISCOUNT;
+        }
+    }
+
+    private final long seed;            // Mixed with the game's random state to seed each move
+    private final long budgetNanos;     // Search time per move, 0 for no limit
+    private final int maxIterations;    // Iterations per worker and move
+    private final int threads;          // Workers searching each move
+    private final GameRandom random = new GameRandom(0); // Split into one generator per worker for each move
+    private final ExecutorService pool; // Runs all workers but the caller's, null with one thread
+    private final Future<?>[] pending;  // Workers started on the pool for the current move
+    private Worker[] workers;           // Created for the first board seen
+    private int rolloutDepth;           // Moves per rollout, from the board size
+
+    /**
+     * Creates a bot.
+     *
+     * @param seed the seed of the search
+     * @param threads the number of threads searching each move
+     * @param budgetNanos the search time per move, 0 for no limit
+     * @param maxIterations the iterations per thread and move
+     */
+    public SearchBot(long seed, int threads, long budgetNanos, int maxIterations) {
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+        this.budgetNanos = budgetNanos;
+        this.maxIterations = maxIterations;
+        this.pending = new Future<?>[this.threads - 1];
+        this.pool = this.threads == 1 ? null : Executors.newFixedThreadPool(this.threads - 1, task -> {
+            Thread thread = new Thread(task, "SearchBot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a bot searching on every core for a time budget per move.
+     *
+     * @param seed the seed of the search
+     * @param budgetNanos the search time per move
+     */
+    public SearchBot(long seed, long budgetNanos) {
+        this(seed, Runtime.getRuntime().availableProcessors(), budgetNanos, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public char nextDirection(GameEngine game) {
+        if (workers == null || workers[0].state.getColumns() != game.getColumns()
+                || workers[0].state.getRows() != game.getRows()) {
+            createWorkers(game.getColumns(), game.getRows());
+        }
+        long deadline = budgetNanos > 0 ? System.nanoTime() + budgetNanos : Long.MAX_VALUE;
+        random.setState(seed ^ game.getRandom().getState() * 0x9E3779B97F4A7C15L + game.getTicks());
+        for (Worker worker : workers) {
+            worker.prepare(game, random.split(), deadline);
+        }
+
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = pool.submit(workers[i + 1]);
+        }
+        workers[0].run(); // The caller searches too
+        for (int i = 0; i < pending.length; i++) {
+            try {
+                pending[i].get();
+            } catch (Exception e) {
+                throw new IllegalStateException("Search failed", e);
+            }
+            pending[i] = null;
+        }
+
+        // Take the move tried most often over all the trees
+        int direction = workers[0].state.getDirection();
+        int best = direction;
+        long bestVisits = -1;
+        for (int action = 0; action < 4; action++) {
+            if (action == (direction ^ 1)) {
+                continue;
+            }
+            long total = 0;
+            for (Worker worker : workers) {
+                int child = worker.children[action];
+                total += child == 0 ? 0 : worker.visits[child];
+            }
+            if (total > bestVisits) {
+                bestVisits = total;
+                best = action;
+            }
+        }
+        return SearchState.ACTIONS.charAt(best);
+    }
+
+    /**
+     * Allocates the workers for a board size.
+     */
+    private void createWorkers(int columns, int rows) {
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(columns, rows);
+        }
+        rolloutDepth = 2 * (columns + rows);
+    }
+
+    /**
+     * Stops the search threads.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
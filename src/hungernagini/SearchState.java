@@ -0,0 +1,387 @@
+/*
+ * The SearchState class is a compact copy of a "Hunger Nagini" game for bots that look ahead.
+ * It is a few primitive arrays that can be copied in bulk, and every move it plays can be undone.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+
+/**
+ * SearchState plays the rules of GameEngine on flat arrays: the body is a
+ * ring of packed cell indices, the occupied cells a bitset, and the apple a
+ * cell. play() pushes what a move changed onto a journal and undo() pops it,
+ * so a search walks down a line of moves and back without copying; when it
+ * needs an independent state, copyFrom() is a few array copies.
+ * <p>
+ * Apples are placed with the state's own GameRandom, by random picks and
+ * then a bitset scan, so after the current apple is eaten the game differs
+ * from the GameEngine it was copied from. That is what a search wants: it
+ * reseeds the random source to sample other apple spawns. Actions are 0 to
+ * 3 for 'U', 'D', 'L' and 'R'.
+ */
+public final class SearchState {
+
+    public static final String ACTIONS = "UDLR"; // Direction of each action number
+
+    private static final int[] DX = {0, 0, -1, 1};  // Column offset of each action
+    private static final int[] DY = {-1, 1, 0, 0};  // Row offset of each action
+    private static final int RANDOM_PICKS = 16;     // Random tries before scanning for a free cell
+    private static final int HEAD_PUSHED = 4;       // Journal flag: the move added a head, above the direction bits
+    private static final int WAS_ALIVE = 8;         // Journal flag: the game was running before the move
+
+    private final int columns;    // Board width in cells
+    private final int rows;       // Board height in cells
+    private final int cells;      // Cells on the board
+    private final int[] body;     // Ring of packed cell indices, its length a power of two
+    private final int mask;       // body.length - 1
+    private final long[] occupied; // One bit per cell covered by the snake
+    private int head;             // Ring slot of the head
+    private int length;           // Number of segments
+    private int growth;           // Moves the tail will stay in place
+    private int direction;        // Current action number
+    private int apple;            // Cell of the apple, -1 on a full board
+    private int score;            // Apples eaten
+    private boolean alive = true; // False once the snake crashed or filled the board
+    private boolean won;          // True if the snake filled the board
+    private final GameRandom random; // Places apples, part of the state
+
+    // Journal of the moves played, one entry per play()
+    private int depth;            // Number of entries
+    private int[] removedTail = new int[64]; // Tail cell the move freed, -1 if none
+    private int[] oldApple = new int[64];    // Apple before the move
+    private int[] oldGrowth = new int[64];   // Pending growth before the move
+    private int[] flags = new int[64];       // Old direction, HEAD_PUSHED and WAS_ALIVE
+    private long[] oldRandom = new long[64]; // Random state before the move
+
+    /**
+     * Creates an empty state for a board; fill it with copyFrom().
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     */
+    public SearchState(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        this.cells = columns * rows;
+        this.body = new int[Integer.highestOneBit(Math.max(2, cells) - 1) << 1];
+        this.mask = body.length - 1;
+        this.occupied = new long[(cells + 63) >>> 6];
+        this.random = new GameRandom(0);
+    }
+
+    /**
+     * Copies a game. The journal is emptied.
+     *
+     * @param game a game on a board of this state's size
+     */
+    public void copyFrom(GameEngine game) {
+        Snake snake = game.getSnake();
+        Arrays.fill(occupied, 0L);
+        head = 0;
+        length = snake.body.size();
+        for (int k = 0; k < length; k++) {
+            int cell = snake.body.cellAt(k);
+            body[k] = cell;
+            occupied[cell >>> 6] |= 1L << cell;
+        }
+        growth = snake.getPendingGrowth();
+        direction = ACTIONS.indexOf(snake.direction);
+        apple = game.getApple().isBoardFull() ? -1 : game.getApple().getCell();
+        score = game.getScore();
+        alive = game.isRunning();
+        won = game.isWon();
+        random.setState(game.getRandom().getState());
+        depth = 0;
+    }
+
+    /**
+     * Copies another state of the same board size. The journal is emptied.
+     *
+     * @param other the state to copy
+     */
+    public void copyFrom(SearchState other) {
+        // Only the live part of the ring is copied, in order, so the copy starts at slot 0
+        for (int k = 0; k < other.length; k++) {
+            body[k] = other.body[(other.head + k) & other.mask];
+        }
+        System.arraycopy(other.occupied, 0, occupied, 0, occupied.length);
+        head = 0;
+        length = other.length;
+        growth = other.growth;
+        direction = other.direction;
+        apple = other.apple;
+        score = other.score;
+        alive = other.alive;
+        won = other.won;
+        random.setState(other.random.getState());
+        depth = 0;
+    }
+
+    /**
+     * Plays one move with the rules of GameEngine.step(): a reversal keeps
+     * the current direction, the tail moves before the head, and eating the
+     * apple grows the snake and places a new one.
+     *
+     * @param action 0 to 3
+     * @return true if the game is still running after the move
+     */
+    public boolean play(int action) {
+        if (depth == flags.length) {
+            growJournal();
+        }
+        int entry = depth++;
+        removedTail[entry] = -1;
+        oldApple[entry] = apple;
+        oldGrowth[entry] = growth;
+        oldRandom[entry] = random.getState();
+        flags[entry] = direction | (alive ? WAS_ALIVE : 0);
+        if (!alive) {
+            return false;
+        }
+        if ((action ^ 1) != direction) {
+            direction = action; // 0/1 and 2/3 are opposite pairs, so action ^ 1 is the reversal
+        }
+
+        int from = body[head];
+        int x = from % columns + DX[direction];
+        int y = from / columns + DY[direction];
+        if (x < 0 || x >= columns || y < 0 || y >= rows) {
+            alive = false; // Off the board
+            return false;
+        }
+        if (growth > 0) {
+            growth--;
+        } else {
+            int tail = body[(head + length - 1) & mask];
+            occupied[tail >>> 6] &= ~(1L << tail);
+            removedTail[entry] = tail;
+            length--;
+        }
+        int cell = y * columns + x;
+        if ((occupied[cell >>> 6] & (1L << cell)) != 0) {
+            alive = false; // Into the body
+            return false;
+        }
+        head = (head - 1) & mask;
+        body[head] = cell;
+        length++;
+        occupied[cell >>> 6] |= 1L << cell;
+        flags[entry] |= HEAD_PUSHED;
+
+        if (cell == apple) {
+            score++;
+            growth++;
+            apple = randomFreeCell();
+            if (apple < 0) {
+                won = true; // The snake covers the board
+                alive = false;
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Takes back the last move played.
+     */
+    public void undo() {
+        int entry = --depth;
+        int flag = flags[entry];
+        if ((flag & HEAD_PUSHED) != 0) {
+            int cell = body[head];
+            occupied[cell >>> 6] &= ~(1L << cell);
+            head = (head + 1) & mask;
+            length--;
+            if (cell == oldApple[entry]) {
+                score--; // The move ate the apple
+            }
+        }
+        int tail = removedTail[entry];
+        if (tail >= 0) {
+            body[(head + length) & mask] = tail;
+            length++;
+            occupied[tail >>> 6] |= 1L << tail;
+        }
+        apple = oldApple[entry];
+        growth = oldGrowth[entry];
+        random.setState(oldRandom[entry]);
+        direction = flag & 3;
+        alive = (flag & WAS_ALIVE) != 0;
+        won = false; // A won game has no moves after it, so the move undone is the one that won
+    }
+
+    /**
+     * Doubles the journal.
+     */
+    private void growJournal() {
+        int size = flags.length * 2;
+        removedTail = Arrays.copyOf(removedTail, size);
+        oldApple = Arrays.copyOf(oldApple, size);
+        oldGrowth = Arrays.copyOf(oldGrowth, size);
+        flags = Arrays.copyOf(flags, size);
+        oldRandom = Arrays.copyOf(oldRandom, size);
+    }
+
+    /**
+     * @return a random cell the snake does not cover, or -1 if the board is full
+     */
+    private int randomFreeCell() {
+        if (length == cells) {
+            return -1;
+        }
+        for (int i = 0; i < RANDOM_PICKS; i++) {
+            int cell = random.nextInt(cells);
+            if ((occupied[cell >>> 6] & (1L << cell)) == 0) {
+                return cell;
+            }
+        }
+        // Scan from a random cell, 64 cells at a time
+        int from = random.nextInt(cells);
+        int word = from >>> 6;
+        long free = ~occupied[word] & (-1L << from);
+        for (int i = 0; i <= occupied.length; i++) {
+            if (free != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(free);
+                if (cell < cells) {
+                    return cell;
+                }
+            }
+            word = word + 1 == occupied.length ? 0 : word + 1;
+            free = ~occupied[word];
+        }
+        return -1;
+    }
+
+    /**
+     * Tells whether a move would keep the snake alive for one tick: the
+     * cell is on the board and free, or is the tail about to leave.
+     *
+     * @param action 0 to 3
+     * @return true if the move is safe for one tick
+     */
+    public boolean isSafe(int action) {
+        if ((action ^ 1) == direction) {
+            action = direction;
+        }
+        int from = body[head];
+        int x = from % columns + DX[action];
+        int y = from / columns + DY[action];
+        if (x < 0 || x >= columns || y < 0 || y >= rows) {
+            return false;
+        }
+        int cell = y * columns + x;
+        if ((occupied[cell >>> 6] & (1L << cell)) == 0) {
+            return true;
+        }
+        return growth == 0 && cell == body[(head + length - 1) & mask];
+    }
+
+    /**
+     * Reseeds the random source, so the following apple spawns are sampled
+     * anew.
+     *
+     * @param state the new random state
+     */
+    public void setRandomState(long state) {
+        random.setState(state);
+    }
+
+    /**
+     * @return the number of moves that can be undone
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return true until the snake crashes or fills the board
+     */
+    public boolean isAlive() {
+        return alive;
+    }
+
+    /**
+     * @return true if the snake filled the board
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * @return the number of apples eaten
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the number of segments
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the packed cell index of the head
+     */
+    public int getHead() {
+        return body[head];
+    }
+
+    /**
+     * @return the cell of the apple, -1 on a full board
+     */
+    public int getApple() {
+        return apple;
+    }
+
+    /**
+     * @return the current direction as an action number
+     */
+    public int getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the board width in cells
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the board height in cells
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param k a segment number, 0 for the head
+     * @return the packed cell index of the segment
+     */
+    public int getCellAt(int k) {
+        return body[(head + k) & mask];
+    }
+
+    /**
+     * @param cell a packed cell index
+     * @return true if the snake covers the cell
+     */
+    public boolean isOccupied(int cell) {
+        return (occupied[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return the number of moves the tail will stay in place
+     */
+    public int getPendingGrowth() {
+        return growth;
+    }
+
+    /**
+     * @return the state of the random source that places the apples
+     */
+    public long getRandomState() {
+        return random.getState();
+    }
+}
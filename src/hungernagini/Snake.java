@@ -5,8 +5,8 @@
 package hungernagini;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 /**
  * Snake class handles the snake coordinates, growth, movement, and drawing.
@@ -14,162 +14,439 @@ import java.util.Random;
  */
 public class Snake {
 
-    // A list representing the body of the snake, with each part stored as a SnakeCoordinate (x, y)
-    public ArrayList<SnakeCoordinate> body;
+    // The body of the snake as packed cell indices, head first. Read-only outside the Snake.
+    public final SnakeBody body;
 
     // The current direction the snake is moving: 'U' for up, 'D' for down, 'L' for left, 'R' for right
     public char direction = 'R'; // Default direction is right
 
-    // The current number of body parts in the snake (starts with 1)
-    private int bodyParts = 1;
+    // Number of upcoming moves that keep the tail in place so the snake gets longer
+    private int pendingGrowth;
+
+    // Set when the last move would have left the board
+    private boolean hitWall;
+
+    // Set when the last move ran the head into the body
+    private boolean hitSelf;
+
+    // Cell the tail left during the last move, -1 if the tail stayed
+    private int removedTail = -1;
+
+    // Cell of the head before the last move, -1 before the first move
+    private int previousHead = -1;
+
+    // Cells covered by the body, kept in step with every head push and tail pop
+    public final OccupancyGrid grid;
 
     // Tracks the number of apples eaten by the snake
     public int applesEaten;
 
+    // Counts drawn frames, used to vary the body colours
+    private int frame;
+
+    // Reused to read the clip of the Graphics being drawn on
+    private final Rectangle clip = new Rectangle();
+
+    // Board size in cells
+    private final int columns;
+    private final int rows;
+
+    // True if other snakes share the grid, so occupied cells are not all this snake's
+    private final boolean sharedGrid;
+
     /**
      * Constructor initializes the snake's body with one part at (0, 0).
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     */
+    public Snake(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        body = new SnakeBody(columns);
+        grid = new OccupancyGrid(columns, rows);
+        body.addHead(0); // Initial head position
+        grid.occupy(0);
+        sharedGrid = false;
+    }
+
+    /**
+     * Creates a snake on a grid shared with other snakes, see Arena.
+     *
+     * @param grid the grid of the board
+     * @param cell the packed cell index of the head
+     * @param direction the initial direction
+     */
+    Snake(OccupancyGrid grid, int cell, char direction) {
+        this.columns = grid.getColumns();
+        this.rows = grid.getRows();
+        this.grid = grid;
+        this.direction = direction;
+        body = new SnakeBody(columns);
+        body.addHead(cell);
+        grid.occupy(cell);
+        sharedGrid = true;
+    }
+
+    /**
+     * Turns the snake, ignoring a turn straight back into its own neck.
+     *
+     * @param newDirection 'U', 'D', 'L' or 'R'
+     */
+    public void turn(char newDirection) {
+        switch (newDirection) {
+            case 'L':
+                if (direction != 'R') {
+                    direction = 'L';
+                }
+                break;
+            case 'R':
+                if (direction != 'L') {
+                    direction = 'R';
+                }
+                break;
+            case 'U':
+                if (direction != 'D') {
+                    direction = 'U';
+                }
+                break;
+            case 'D':
+                if (direction != 'U') {
+                    direction = 'D';
+                }
+                break;
+        }
+    }
+
+    /**
+     * @param direction 'U', 'D', 'L' or 'R'
+     * @return the column offset of a move in that direction
      */
-    public Snake() {
-        body = new ArrayList<>();
-        body.add(new SnakeCoordinate(0, 0)); // Initial head position
+    public static int dx(char direction) {
+        return direction == 'L' ? -1 : direction == 'R' ? 1 : 0;
     }
 
     /**
-     * Moves the snake's body and head based on the current direction.
+     * @param direction 'U', 'D', 'L' or 'R'
+     * @return the row offset of a move in that direction
+     */
+    public static int dy(char direction) {
+        return direction == 'U' ? -1 : direction == 'D' ? 1 : 0;
+    }
+
+    /**
+     * @return true if the two directions are opposite
+     */
+    public static boolean isReverse(char a, char b) {
+        return dx(a) == -dx(b) && dy(a) == -dy(b);
+    }
+
+    /**
+     * Moves the snake one cell in the current direction. The new head is
+     * pushed and the tail is popped, unless the snake is growing, so a move
+     * costs the same whatever the length of the snake.
      */
     public void move() {
-        // Move each body part to the position of the part in front of it
-        for (int i = bodyParts - 1; i > 0; i--) {
-            body.get(i).setX(body.get(i - 1).getX());
-            body.get(i).setY(body.get(i - 1).getY());
+        int cell = nextHead();
+        if (cell < 0) {
+            hitWall = true; // The head would leave the board, checkCollisions() reports it
+            return;
+        }
+        releaseTail(); // The tail leaves first, so the head may follow it
+        if (grid.isOccupied(cell)) {
+            hitSelf = true; // The head runs into the body
         }
+        enter(cell);
+    }
+
+    /**
+     * Starts a move: works out the cell the head moves to. move() is
+     * nextHead(), releaseTail() and enter(); Arena runs the three steps for
+     * all its snakes in turn.
+     *
+     * @return the packed cell index of the new head, or -1 if it would leave the board
+     */
+    int nextHead() {
+        removedTail = -1;
+        int head = body.headCell();
+        previousHead = head;
+        int x = head % columns;
+        int y = head / columns;
 
         // Move the snake's head according to the current direction
-        SnakeCoordinate head = body.get(0);
         switch (direction) {
             case 'U':
-                head.setY(head.getY() - Map.UNIT_SIZE); // Up
+                y--; // Up
                 break;
             case 'D':
-                head.setY(head.getY() + Map.UNIT_SIZE); // Down
+                y++; // Down
                 break;
             case 'L':
-                head.setX(head.getX() - Map.UNIT_SIZE); // Left
+                x--; // Left
                 break;
             case 'R':
-                head.setX(head.getX() + Map.UNIT_SIZE); // Right
+                x++; // Right
                 break;
         }
+        return grid.inBounds(x, y) ? grid.cellOf(x, y) : -1;
+    }
+
+    /**
+     * Frees the tail cell, unless the snake is growing.
+     */
+    void releaseTail() {
+        if (pendingGrowth > 0) {
+            pendingGrowth--; // Keep the tail where it is
+        } else {
+            removedTail = body.removeTail();
+            grid.vacate(removedTail);
+        }
+    }
+
+    /**
+     * Finishes a move by putting the head on its new cell.
+     *
+     * @param cell the cell returned by nextHead()
+     */
+    void enter(int cell) {
+        body.addHead(cell);
+        grid.occupy(cell);
+    }
+
+    /**
+     * Takes the whole body off the grid, when the snake dies in an Arena.
+     */
+    void clear() {
+        for (int i = 0; i < body.size(); i++) {
+            grid.vacate(body.cellAt(i));
+        }
     }
 
     /**
      * Draws the snake on the screen. The head is drawn as a green pentagon, and
-     * the body is a darker green color.
+     * the body is a darker green color. The head sprites and body colours come
+     * from the RenderCache, so drawing allocates nothing.
      *
      * @param g the Graphics object used for drawing.
      */
     public void draw(Graphics g) {
-        for (int i = 0; i < body.size(); i++) {
-            if (i == 0) {
-                g.setColor(Color.GREEN); // The snake's head is green
-                int xCenter = body.get(i).getX() + Map.UNIT_SIZE / 2; // Center x of pentagon
-                int yCenter = body.get(i).getY() + Map.UNIT_SIZE / 2; // Center y of pentagon
-                int radius = Map.UNIT_SIZE / 2; // Radius for pentagon
-
-                // Calculate points for a pentagon
-                int[] xPoints = new int[5];
-                int[] yPoints = new int[5];
-                double angleOffset = 0; // Default rotation angle
-                switch (direction) {
-                    case 'U':
-                        angleOffset = -Math.PI / 2;
-                        break; // Up
-                    case 'D':
-                        angleOffset = Math.PI / 2;
-                        break; // Down
-                    case 'L':
-                        angleOffset = Math.PI;
-                        break; // Left
-                    case 'R':
-                        angleOffset = 0;
-                        break; // Right
-                }
+        draw(g, 1.0);
+    }
 
-                for (int j = 0; j < 5; j++) {
-                    double angle = 2 * Math.PI / 5 * j + angleOffset; // Calculate angle for each point
-                    xPoints[j] = (int) (xCenter + radius * Math.cos(angle)); // Calculate x coordinate
-                    yPoints[j] = (int) (yCenter + radius * Math.sin(angle)); // Calculate y coordinate
-                }
+    /**
+     * Draws the snake part of the way between its previous and current
+     * position. Only the head and the tail are moved: every other part sits
+     * on a cell that another part occupied a tick earlier, so the body looks
+     * the same either way. Coordinates are board pixels, so the caller
+     * translates the Graphics to the camera; only cells inside the clip are
+     * drawn, which keeps the cost bounded by the screen size on huge boards.
+     *
+     * @param g the Graphics object used for drawing.
+     * @param alpha 0 for the position before the last move, 1 for the current one
+     */
+    public void draw(Graphics g, double alpha) {
+        RenderCache cache = RenderCache.get();
+        frame++; // Changes the body colours every frame
 
-                // Draw the head as a pentagon
-                g.fillPolygon(xPoints, yPoints, 5);
-            } else {
-                // Random color generation for body parts
-                Random random = new Random();
-                int red = random.nextInt(100); // Red color range: 0 - 99
-                int green = random.nextInt(100) + 155; // Green color range: 155 - 255
-                int blue = random.nextInt(100); // Blue color range: 0 - 99
-                g.setColor(new Color(red, green, blue)); // Set color for body parts
-                // Draw each body part as an oval of size Map.UNIT_SIZE
-                g.fillOval(body.get(i).getX(), body.get(i).getY(), Map.UNIT_SIZE, Map.UNIT_SIZE);
+        // Only the cells inside the area being repainted are drawn
+        clip.setBounds(0, 0, columns * Map.UNIT_SIZE, rows * Map.UNIT_SIZE);
+        Rectangle area = g.getClipBounds(clip);
+        if (area == null) {
+            area = clip; // No clip, the whole board is drawn
+        }
+        int left = Math.max(0, area.x / Map.UNIT_SIZE);
+        int top = Math.max(0, area.y / Map.UNIT_SIZE);
+        int right = Math.min(columns - 1, (area.x + area.width - 1) / Map.UNIT_SIZE);
+        int bottom = Math.min(rows - 1, (area.y + area.height - 1) / Map.UNIT_SIZE);
+        long visibleCells = (long) Math.max(0, right - left + 1) * Math.max(0, bottom - top + 1);
+
+        int last = body.size() - 1;
+        if (!sharedGrid && body.size() > visibleCells) {
+            // A long snake on a big board: look up the visible cells instead of walking the body
+            int head = body.headCell();
+            int tail = body.tailCell();
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    int cell = y * columns + x;
+                    if (grid.isOccupied(cell) && cell != head && cell != tail) {
+                        g.drawImage(cache.segmentSprite(cell, frame), x * Map.UNIT_SIZE, y * Map.UNIT_SIZE, null);
+                    }
+                }
+            }
+        } else {
+            for (int i = 1; i < last; i++) {
+                int x = body.getX(i);
+                int y = body.getY(i);
+                // Skip parts outside the area being repainted
+                if (g.hitClip(x, y, Map.UNIT_SIZE, Map.UNIT_SIZE)) {
+                    // Draw each body part as a pre-rendered oval of size Map.UNIT_SIZE
+                    g.drawImage(cache.segmentSprite(body.cellAt(i), frame), x, y, null);
+                }
             }
         }
+
+        // The tail slides out of the cell it left
+        if (last > 0) {
+            int from = removedTail >= 0 ? removedTail : body.tailCell();
+            g.drawImage(cache.segmentSprite(body.tailCell(), frame),
+                    lerp(from % columns, body.tailCell() % columns, alpha),
+                    lerp(from / columns, body.tailCell() / columns, alpha), null);
+        }
+
+        // Draw the head as a pentagon pointing in the current direction, sliding in from its previous cell
+        int from = previousHead >= 0 ? previousHead : body.headCell();
+        g.drawImage(cache.headSprite(direction),
+                lerp(from % columns, body.headCell() % columns, alpha),
+                lerp(from / columns, body.headCell() / columns, alpha), null);
     }
 
     /**
-     * Grows the snake by adding a new body part. The new part is added at a
-     * calculated position based on the current direction.
+     * Interpolates between two columns (or rows) and converts to pixels.
      */
-    public void grow() {
-        // Get the coordinates of the last part of the snake
-        SnakeCoordinate lastPart = body.get(body.size() - 1);
+    private static int lerp(int from, int to, double alpha) {
+        return (int) ((from + (to - from) * alpha) * Map.UNIT_SIZE);
+    }
 
-        int newX = lastPart.getX();
-        int newY = lastPart.getY();
+    /**
+     * @return the number of moves the tail will stay in place
+     */
+    public int getPendingGrowth() {
+        return pendingGrowth;
+    }
 
-        // Adjust new part coordinates based on the direction
-        switch (direction) {
-            case 'U':
-                newY += Map.UNIT_SIZE; // Add below if moving up
-                break;
-            case 'D':
-                newY -= Map.UNIT_SIZE; // Add above if moving down
-                break;
-            case 'L':
-                newX += Map.UNIT_SIZE; // Add to the right if moving left
-                break;
-            case 'R':
-                newX -= Map.UNIT_SIZE; // Add to the left if moving right
-                break;
-        }
+    /**
+     * @return true if the last move would have left the board, one of the two ways checkCollisions() fails
+     */
+    public boolean isHitWall() {
+        return hitWall;
+    }
 
-        body.add(new SnakeCoordinate(newX, newY)); // Add new part
-        applesEaten++; // Increment apples eaten
-        bodyParts++; // Increase body length
+    /**
+     * @return true if the last move ran the head into the body, the other way checkCollisions() fails
+     */
+    public boolean isHitSelf() {
+        return hitSelf;
     }
 
     /**
-     * Checks for collisions with the snake own body or the walls.
+     * @return the cell of the head before the last move, or -1 before the first move
+     */
+    public int getPreviousHead() {
+        return previousHead;
+    }
+
+    /**
+     * Moves the snake to a head cell chosen elsewhere, without checking any
+     * rule. Used to mirror a game played by a server.
      *
-     * @return true if no collision occurs, false if a collision is detected.
+     * @param cell the packed cell index of the new head
+     * @param removed the cell the tail left, or -1 if the snake grew
      */
-    public boolean checkCollisions() {
-        SnakeCoordinate head = body.get(0); // Head of the snake
+    void applyMove(int cell, int removed) {
+        int head = body.headCell();
+        previousHead = head;
+        removedTail = removed;
+        if (removed >= 0) {
+            body.removeTail();
+            grid.vacate(removed);
+        }
+        // The direction follows from where the head went
+        if (cell == head + 1) {
+            direction = 'R';
+        } else if (cell == head - 1) {
+            direction = 'L';
+        } else {
+            direction = cell > head ? 'D' : 'U';
+        }
+        body.addHead(cell);
+        grid.occupy(cell);
+    }
 
-        // Check for self-collision
-        for (int i = 1; i < body.size(); i++) {
-            if (head.equals(body.get(i))) {
-                return false; // Collision with itself
-            }
+    /**
+     * Writes the state of the snake into a buffer. Used by Snapshot.
+     *
+     * @param out the buffer to write to
+     */
+    void writeState(ByteBuffer out) {
+        out.putChar(direction);
+        out.putInt(pendingGrowth);
+        out.putInt(applesEaten);
+        out.put((byte) ((hitWall ? 1 : 0) | (hitSelf ? 2 : 0)));
+        out.putInt(removedTail);
+        out.putInt(previousHead);
+        out.putInt(body.size());
+        IntBuffer cells = out.asIntBuffer();
+        body.writeTo(cells);
+        out.position(out.position() + cells.position() * 4); // The int view does not move the byte buffer
+    }
+
+    /**
+     * Replaces the state of the snake with one written by writeState(). The
+     * occupancy grid is rebuilt from the body.
+     *
+     * @param in the buffer to read from
+     */
+    void readState(ByteBuffer in) {
+        for (int i = 0; i < body.size(); i++) {
+            grid.mark(body.cellAt(i), false); // Clear the current body from the grid
         }
 
-        // Check for wall collisions (out of bounds)
-        if (head.getX() < 0 || head.getX() >= Main.SCREEN_WIDTH
-                || head.getY() < 0 || head.getY() >= Main.SCREEN_HEIGHT) {
-            return false; // Collision with wall
+        direction = in.getChar();
+        pendingGrowth = in.getInt();
+        applesEaten = in.getInt();
+        byte flags = in.get();
+        hitWall = (flags & 1) != 0;
+        hitSelf = (flags & 2) != 0;
+        removedTail = in.getInt();
+        previousHead = in.getInt();
+        int length = in.getInt();
+        IntBuffer cells = in.asIntBuffer();
+        body.readFrom(cells, length);
+        in.position(in.position() + length * 4);
+
+        for (int i = 0; i < length; i++) {
+            grid.mark(body.cellAt(i), true);
         }
+        grid.recount(); // One pass over the counts instead of one update per segment
+    }
+
+    /**
+     * @return the cell the tail left during the last move, or -1 if it did not move
+     */
+    public int getRemovedTail() {
+        return removedTail;
+    }
+
+    /**
+     * Grows the snake by one body part. The next move keeps the tail in
+     * place instead of popping it, so no new segment has to be allocated.
+     */
+    public void grow() {
+        pendingGrowth++; // Skip the next tail pop
+        applesEaten++; // Increment apples eaten
+    }
+
+    /**
+     * Eats a pickup: the snake grows by some segments over the next moves
+     * and scores some points.
+     *
+     * @param growth the number of segments to add
+     * @param points the points to add to the score
+     */
+    public void feed(int growth, int points) {
+        pendingGrowth += growth;
+        applesEaten += points;
+    }
 
-        return true; // No collision
+    /**
+     * Checks for collisions with the snake own body or the walls during the
+     * last move.
+     *
+     * @return true if no collision occurs, false if a collision is detected.
+     */
+    public boolean checkCollisions() {
+        // Both flags are set by move() from grid lookups, so this is constant-time
+        return !hitWall && !hitSelf;
     }
 
     /**
@@ -179,10 +456,8 @@ public class Snake {
      * @param apple the Apple object to check for collision with.
      */
     public void checkApple(Apple apple) {
-        SnakeCoordinate head = body.get(0); // Head of the snake
-
         // Check if the head is at the same position as the apple
-        if (head.getX() == apple.getX() && head.getY() == apple.getY()) {
+        if (body.headCell() == apple.getCell()) {
             grow(); // Snake grows
             apple.newApple(); // Generate a new apple
         }
@@ -0,0 +1,150 @@
+/*
+ * The SnakeBody class stores the segments of the snake in the "Hunger Nagini" game.
+ * Segments are kept as packed cell indices (row * columns + column) in a circular buffer,
+ * so moving the snake only touches the head and the tail.
+ */
+package hungernagini;
+
+import java.nio.IntBuffer;
+
+/**
+ * SnakeBody is a primitive ring buffer of packed cell indices. Index 0 is the
+ * head and index size() - 1 is the tail. The public methods form a read-only
+ * view of the body; only the Snake changes it through the package-private
+ * mutators.
+ */
+public class SnakeBody {
+
+    private int[] cells;   // Ring storage, its length is always a power of two
+    private int mask;      // cells.length - 1, used to wrap indices
+    private int head;      // Slot of the head segment
+    private int size;      // Number of segments
+    private final int columns; // Board width in cells, used to unpack cell indices
+
+    /**
+     * Creates an empty body for a board that is the given number of cells wide.
+     *
+     * @param columns the board width in cells
+     */
+    SnakeBody(int columns) {
+        this.columns = columns;
+        this.cells = new int[16];
+        this.mask = cells.length - 1;
+    }
+
+    /**
+     * @return the number of segments in the body
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the packed cell index of a segment.
+     *
+     * @param i the segment index, 0 being the head
+     * @return the packed cell index of the segment
+     */
+    public int cellAt(int i) {
+        return cells[(head + i) & mask];
+    }
+
+    /**
+     * @return the packed cell index of the head
+     */
+    public int headCell() {
+        return cells[head];
+    }
+
+    /**
+     * @return the packed cell index of the tail
+     */
+    public int tailCell() {
+        return cells[(head + size - 1) & mask];
+    }
+
+    /**
+     * Returns the x pixel coordinate of a segment.
+     *
+     * @param i the segment index, 0 being the head
+     * @return the x coordinate on the map
+     */
+    public int getX(int i) {
+        return cellAt(i) % columns * Map.UNIT_SIZE;
+    }
+
+    /**
+     * Returns the y pixel coordinate of a segment.
+     *
+     * @param i the segment index, 0 being the head
+     * @return the y coordinate on the map
+     */
+    public int getY(int i) {
+        return cellAt(i) / columns * Map.UNIT_SIZE;
+    }
+
+    /**
+     * Adds a new head segment in front of the current head.
+     *
+     * @param cell the packed cell index of the new head
+     */
+    void addHead(int cell) {
+        if (size == cells.length) {
+            expand(); // Only happens when the snake outgrows the buffer
+        }
+        head = (head - 1) & mask;
+        cells[head] = cell;
+        size++;
+    }
+
+    /**
+     * Removes the tail segment.
+     *
+     * @return the packed cell index the tail occupied
+     */
+    int removeTail() {
+        size--;
+        return cells[(head + size) & mask];
+    }
+
+    /**
+     * Copies the segments, head first, into a buffer. Used by snapshots.
+     *
+     * @param out the buffer to write size() cells into
+     */
+    void writeTo(IntBuffer out) {
+        int firstPart = Math.min(size, cells.length - head); // Segments before the ring wraps
+        out.put(cells, head, firstPart);
+        out.put(cells, 0, size - firstPart);
+    }
+
+    /**
+     * Replaces the segments with cells read from a buffer, head first. Used
+     * by snapshots.
+     *
+     * @param in the buffer to read from
+     * @param length the number of segments to read
+     */
+    void readFrom(IntBuffer in, int length) {
+        if (cells.length < length) {
+            cells = new int[Integer.highestOneBit(length - 1) << 1];
+            mask = cells.length - 1;
+        }
+        in.get(cells, 0, length);
+        head = 0;
+        size = length;
+    }
+
+    /**
+     * Doubles the buffer, unrolling the ring so the head starts at slot 0.
+     */
+    private void expand() {
+        int[] bigger = new int[cells.length * 2];
+        int firstPart = cells.length - head; // Segments from the head to the end of the array
+        System.arraycopy(cells, head, bigger, 0, firstPart);
+        System.arraycopy(cells, 0, bigger, firstPart, head);
+        cells = bigger;
+        mask = bigger.length - 1;
+        head = 0;
+    }
+}
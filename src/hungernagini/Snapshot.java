@@ -0,0 +1,213 @@
+/*
+ * The Snapshot class encodes the complete state of a "Hunger Nagini" game as flat binary data.
+ * Replays store snapshots as keyframes so they can jump to any tick without playing the whole game,
+ * and Main saves them to a file so a game can be resumed after the program ends.
+ */
+package hungernagini;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Snapshot writes and reads the state of a GameEngine: the tick count, the
+ * result flags, the random state, the apple and the snake, with the body as
+ * a block of packed cell indices. Nothing else is needed: the free-cell
+ * index is rebuilt from the body, and apples are placed by the rank of a
+ * free cell, which does not depend on the index's history. A snapshot is
+ * therefore proportional to the snake, not to the board, and restoring it
+ * into an engine of the same board size makes it continue exactly like the
+ * original.
+ */
+public final class Snapshot {
+
+    static final int MAGIC = 0x484E5353;   // "HNSS", first bytes of a snapshot file
+    static final short VERSION = 2;        // Format version of a snapshot file, 1 also held the free-cell index
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4 + 4; // magic, version, columns, rows, data size
+
+    private static final int FIXED_SIZE = 8 + 1 + 8 + 4 + 1   // ticks, flags, random state, apple cell, apple flag
+            + 2 + 4 + 4 + 1 + 4 + 4 + 4;                     // Snake fields, see Snake.writeState
+
+    private Snapshot() {
+    }
+
+    /**
+     * Returns the number of bytes write() needs for a game.
+     *
+     * @param engine the game
+     * @return the encoded size in bytes
+     */
+    public static int size(GameEngine engine) {
+        return FIXED_SIZE + engine.getLength() * 4;
+    }
+
+    /**
+     * Returns the largest size write() can need on a board, reached when
+     * the snake fills it.
+     *
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @return the largest encoded size in bytes
+     */
+    public static long maxSize(int columns, int rows) {
+        return FIXED_SIZE + (long) columns * rows * 4;
+    }
+
+    /**
+     * Writes the state of a game at the position of a buffer.
+     *
+     * @param engine the game to save
+     * @param out the buffer, with at least size(engine) bytes remaining
+     */
+    public static void write(GameEngine engine, ByteBuffer out) {
+        Apple apple = engine.getApple();
+        out.putLong(engine.getTicks());
+        out.put((byte) ((engine.isRunning() ? 1 : 0) | (engine.isWon() ? 2 : 0)));
+        out.putLong(engine.getRandom().getState());
+        out.putInt(apple.getCell());
+        out.put((byte) (apple.isBoardFull() ? 1 : 0));
+        engine.getSnake().writeState(out);
+    }
+
+    /**
+     * Replaces the state of a game with one read from a buffer.
+     *
+     * @param engine the game to restore, created with the same board size
+     * @param in the buffer, positioned at data written by write()
+     */
+    public static void read(GameEngine engine, ByteBuffer in) {
+        long ticks = in.getLong();
+        byte flags = in.get();
+        engine.getRandom().setState(in.getLong());
+        int appleCell = in.getInt();
+        boolean boardFull = in.get() != 0;
+        engine.getSnake().readState(in);
+        engine.getApple().place(appleCell, boardFull);
+        engine.restore(ticks, (flags & 1) != 0, (flags & 2) != 0);
+    }
+
+    /**
+     * Saves a game to a file. The snapshot is written to a temporary file
+     * that then replaces the old one, so a crash while saving leaves the
+     * previous save intact.
+     *
+     * @param engine the game to save
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(GameEngine engine, Path file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(fileSize(engine));
+        encode(engine, out);
+        out.flip();
+        writeFile(out, file);
+    }
+
+    /**
+     * @param engine the game
+     * @return the size of the file save() writes for the game
+     */
+    public static int fileSize(GameEngine engine) {
+        return HEADER_SIZE + size(engine);
+    }
+
+    /**
+     * Writes the contents of a snapshot file, header included, so it can be
+     * handed to writeFile() on another thread while the game goes on.
+     *
+     * @param engine the game to save
+     * @param out the buffer, with at least fileSize(engine) bytes remaining
+     */
+    public static void encode(GameEngine engine, ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putInt(engine.getColumns());
+        out.putInt(engine.getRows());
+        out.putInt(size(engine));
+        write(engine, out);
+    }
+
+    /**
+     * Writes snapshot contents made by encode() to a file through a
+     * temporary file that then replaces the old one.
+     *
+     * @param data the contents, between the position and the limit
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeFile(ByteBuffer data, Path file) throws IOException {
+        ByteBuffer out = data.duplicate();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a game saved by save(). The file is memory-mapped and the body is
+     * copied straight from the mapping into the snake.
+     *
+     * @param file the file to read
+     * @return a game in the saved state
+     * @throws IOException if the file cannot be read, is not a snapshot of
+     *         this version, or does not describe a game on its board
+     */
+    public static GameEngine load(Path file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a snapshot file");
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException(file + " has snapshot version " + version + ", expected " + VERSION);
+            }
+            int columns = in.getInt();
+            int rows = in.getInt();
+            int size = in.getInt();
+            if (columns <= 0 || rows <= 0 || (long) columns * rows > OccupancyGrid.MAX_CELLS
+                    || size != in.remaining() || !isValid(in, columns * rows)) {
+                throw new IOException(file + " is damaged");
+            }
+            GameEngine engine = new GameEngine(columns, rows, 0);
+            read(engine, in);
+            return engine;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(file + " is damaged", e);
+        }
+    }
+
+    /**
+     * Checks that the data at the position of a buffer holds a snake of at
+     * least one segment and at most the board, every segment on the board,
+     * and nothing after it. The position does not move.
+     */
+    private static boolean isValid(ByteBuffer in, int cells) {
+        if (in.remaining() < FIXED_SIZE) {
+            return false;
+        }
+        int start = in.position();
+        int length = in.getInt(start + FIXED_SIZE - 4); // The last of the snake fields
+        if (length < 1 || length > cells || in.remaining() != FIXED_SIZE + length * 4L) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int cell = in.getInt(start + FIXED_SIZE + i * 4);
+            if (cell < 0 || cell >= cells) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
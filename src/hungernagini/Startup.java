@@ -0,0 +1,156 @@
+/*
+ * The Startup class gets the "Hunger Nagini" window to its first menu frame quickly.
+ * It times the phases of the start, loads drawing resources while the window is built,
+ * and holds back work the first frame does not need until that frame is on screen.
+ */
+package hungernagini;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Startup keeps a list of named phases, each stamped with System.nanoTime()
+ * when it ends. Main marks them as it builds the window, and the first
+ * paint marks the last one; the list is printed when hungernagini.startupLog
+ * is set, with the time the JVM took to reach main() in front.
+ * <p>
+ * Work is handed to one background thread in two stages: preload() tasks
+ * start at once, while the event thread is still waiting for the window,
+ * and afterFirstFrame() tasks wait until the first frame has been painted,
+ * so they never compete with it for a core. With
+ * hungernagini.exitAfterFirstFrame set the game exits once both are done,
+ * which is the training run that builds the AppCDS archive.
+ */
+public final class Startup {
+
+    // Prints the startup phases; set with -Dhungernagini.startupLog=true
+    public static final boolean LOG = Boolean.getBoolean("hungernagini.startupLog");
+
+    // Quits after the first frame and the deferred work, for the class data sharing training run
+    public static final boolean EXIT_AFTER_FIRST_FRAME = Boolean.getBoolean("hungernagini.exitAfterFirstFrame");
+
+    private static final int MAX_PHASES = 16; // Phases kept, later ones are dropped
+
+    private static final long origin = System.nanoTime(); // When the class was initialised, at the start of main()
+    private static final String[] names = new String[MAX_PHASES]; // Name of each phase
+    private static final long[] ends = new long[MAX_PHASES];      // When each phase ended
+    private static int count;                                    // Number of phases marked
+    private static final Object deferredLock = new Object();     // Guards deferred and firstFrameSeen
+    private static Runnable[] deferred = new Runnable[0];        // Tasks waiting for the first frame
+    private static volatile boolean firstFrameSeen;               // True once the first frame was painted
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Startup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1); // The event thread comes first
+        return thread;
+    }); // Runs the preloading and deferred work
+
+    private Startup() {
+    }
+
+    /**
+     * Marks the end of a phase.
+     *
+     * @param name what the phase did
+     */
+    public static synchronized void phase(String name) {
+        if (count < MAX_PHASES) {
+            names[count] = name;
+            ends[count] = System.nanoTime();
+            count++;
+        }
+    }
+
+    /**
+     * Runs a task on the background thread now, so it overlaps with
+     * building the window.
+     *
+     * @param task the work to start
+     */
+    public static void preload(Runnable task) {
+        worker.execute(guarded(task));
+    }
+
+    /**
+     * Runs a task on the background thread once the first frame has been
+     * painted, or now if it already has.
+     *
+     * @param task work the first frame does not need
+     */
+    public static void afterFirstFrame(Runnable task) {
+        synchronized (deferredLock) {
+            if (!firstFrameSeen) {
+                Runnable[] more = new Runnable[deferred.length + 1];
+                System.arraycopy(deferred, 0, more, 0, deferred.length);
+                more[deferred.length] = task;
+                deferred = more;
+                return;
+            }
+        }
+        worker.execute(guarded(task));
+    }
+
+    /**
+     * Tells Startup a frame has been painted. Cheap after the first call,
+     * so it can be called from every paint.
+     */
+    public static void framePainted() {
+        if (firstFrameSeen) {
+            return;
+        }
+        Runnable[] tasks;
+        synchronized (deferredLock) {
+            if (firstFrameSeen) {
+                return;
+            }
+            phase("first frame");
+            firstFrameSeen = true;
+            tasks = deferred;
+            deferred = null;
+        }
+        for (Runnable task : tasks) {
+            worker.execute(guarded(task));
+        }
+        if (LOG) {
+            worker.execute(Startup::report);
+        }
+        if (EXIT_AFTER_FIRST_FRAME) {
+            worker.execute(() -> System.exit(0)); // Runs after everything queued before it
+        }
+    }
+
+    /**
+     * Wraps a task so a failure is reported and the queue goes on.
+     */
+    private static Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                System.err.println("Startup task failed: " + e);
+            }
+        };
+    }
+
+    /**
+     * Prints the phases, each with its own duration and the time since the
+     * JVM started.
+     */
+    private static void report() {
+        long now = System.nanoTime();
+        // Uptime counts from the JVM's start, the origin from main(); the difference is the JVM's own start
+        double beforeMain = ManagementFactory.getRuntimeMXBean().getUptime() - (now - origin) / 1e6;
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "Startup: JVM to main() %.0f ms%n", beforeMain));
+        synchronized (Startup.class) {
+            long previous = origin;
+            for (int i = 0; i < count; i++) {
+                text.append(String.format(Locale.ROOT, "  %-20s %7.1f ms  (at %7.1f ms)%n", names[i],
+                        (ends[i] - previous) / 1e6, beforeMain + (ends[i] - origin) / 1e6));
+                previous = ends[i];
+            }
+        }
+        System.err.print(text);
+    }
+}
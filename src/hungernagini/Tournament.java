@@ -0,0 +1,309 @@
+/*
+ * The Tournament class evaluates a "Hunger Nagini" bot over a large number of seeded games.
+ * It runs from the command line without a window, streams every result to a file,
+ * and keeps its summary in constant memory, so a run can go on overnight.
+ */
+package hungernagini;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Tournament plays seeds firstSeed to firstSeed + games - 1 with a
+ * BatchSimulator, one game at a time per worker thread. Workers take seeds
+ * in blocks of BLOCK_SIZE from a shared counter, write the block's results
+ * into a buffer of their own and then append it to the sink in one call,
+ * and fold the block's GameStats into the running total. Records in the
+ * file are therefore grouped by block, not sorted by seed; each carries its
+ * seed.
+ * <p>
+ * The sink is CSV when the file name ends in ".csv", with the columns
+ * seed, score, length, ticks and outcome; otherwise it is binary: a header
+ * of MAGIC and VERSION, then fixed RECORD_SIZE records of the seed, score,
+ * length, ticks and outcome code, big-endian. The outcome is won, wall,
+ * self or unfinished, codes 0 to 3.
+ * <p>
+ * Usage: Tournament BOT GAMES [FILE], where BOT is greedy, pathfinding or
+ * search. The board, first seed, tick limit, threads, progress interval and
+ * search iterations are read from the system properties below.
+ */
+public class Tournament {
+
+    public static final int MAGIC = 0x484E5452;   // "HNTR", first int of a binary result file
+    public static final int VERSION = 1;          // Format of the binary records
+    public static final int RECORD_SIZE = 8 + 4 + 4 + 8 + 1; // seed, score, length, ticks, outcome
+
+    public static final int WON = 0;        // Outcome: the snake filled the board
+    public static final int WALL = 1;       // Outcome: the head left the board
+    public static final int SELF = 2;       // Outcome: the head ran into the body
+    public static final int UNFINISHED = 3; // Outcome: stopped at the tick limit
+    private static final String[] OUTCOMES = {"won", "wall", "self", "unfinished"}; // Outcome names in the CSV
+
+    private static final int BLOCK_SIZE = 256;      // Seeds a worker takes at a time
+    private static final int STREAM_BUFFER = 1 << 16; // Bytes buffered before the sink is written
+
+    private final BatchSimulator simulator; // Plays one game per seed
+    private final long firstSeed;           // Seed of the first game
+    private final long games;               // Number of games to play
+    private final int threads;              // Worker threads
+    private final OutputStream sink;        // Where results go, null to keep only the summary
+    private final boolean csv;              // True for CSV records, false for binary
+    private final AtomicLong nextSeed;      // Next seed no worker has taken
+    private final AtomicLong done = new AtomicLong(); // Games finished
+    private final GameStats total = new GameStats();  // Summary of the blocks merged so far, guarded by itself
+
+    /**
+     * Sets up a tournament.
+     *
+     * @param simulator plays the games
+     * @param firstSeed the seed of the first game
+     * @param games the number of games
+     * @param threads the number of worker threads
+     * @param sink the stream results are written to, null for none; it is not closed
+     * @param csv true to write CSV records, false for binary ones
+     * @throws IOException if the header cannot be written
+     */
+    public Tournament(BatchSimulator simulator, long firstSeed, long games, int threads, OutputStream sink, boolean csv)
+            throws IOException {
+        this.simulator = simulator;
+        this.firstSeed = firstSeed;
+        this.games = games;
+        this.threads = Math.max(1, threads);
+        this.sink = sink;
+        this.csv = csv;
+        this.nextSeed = new AtomicLong(firstSeed);
+        if (sink != null) {
+            if (csv) {
+                sink.write("seed,score,length,ticks,outcome\n".getBytes(StandardCharsets.US_ASCII));
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putInt(MAGIC).putInt(VERSION);
+                sink.write(header.array());
+            }
+        }
+    }
+
+    /**
+     * Plays every game, printing progress to System.err at an interval.
+     *
+     * @param progressMillis the time between two progress lines, 0 for none
+     * @return the summary of all games
+     * @throws IOException if a result could not be written
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    public GameStats run(long progressMillis) throws IOException, InterruptedException {
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+            running[i] = new Thread(workers[i], "Tournament-" + i);
+            running[i].setDaemon(true);
+            running[i].start();
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : running) {
+            while (thread.isAlive()) {
+                thread.join(progressMillis > 0 ? progressMillis : 0);
+                if (progressMillis > 0 && thread.isAlive()) {
+                    System.err.println(progress(start));
+                }
+            }
+        }
+        for (Worker worker : workers) {
+            if (worker.failure instanceof IOException) {
+                throw (IOException) worker.failure;
+            }
+            if (worker.failure != null) {
+                throw new IllegalStateException("Tournament worker failed", worker.failure);
+            }
+        }
+        if (sink != null) {
+            sink.flush();
+        }
+        synchronized (total) {
+            return total;
+        }
+    }
+
+    /**
+     * @return a line with the games played, their rate, the time left and the summary so far
+     */
+    private String progress(long start) {
+        long finished = done.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = finished / Math.max(seconds, 1e-9);
+        double left = rate > 0 ? (games - finished) / rate : Double.POSITIVE_INFINITY;
+        String summary;
+        synchronized (total) {
+            summary = total.toString();
+        }
+        return String.format(Locale.ROOT, "%d/%d games (%.1f%%) %.0f games/s, %.0f s left: %s",
+                finished, games, 100.0 * finished / Math.max(1, games), rate, left, summary);
+    }
+
+    /**
+     * A worker thread, playing blocks of seeds until none are left.
+     */
+    private final class Worker implements Runnable {
+
+        private final GameStats block = new GameStats(); // Results of the current block
+        private final ByteBuffer records = ByteBuffer.allocate(BLOCK_SIZE * RECORD_SIZE); // Binary records of the block
+        private final StringBuilder lines = new StringBuilder(BLOCK_SIZE * 32);        // CSV records of the block
+        private byte[] bytes = new byte[BLOCK_SIZE * 32]; // The CSV records as ASCII
+        private Exception failure;                         // Set if the sink could not be written or a bot failed
+
+        @Override
+        public void run() {
+            long end = firstSeed + games;
+            try {
+                while (true) {
+                    long from = nextSeed.getAndAdd(BLOCK_SIZE);
+                    if (from >= end) {
+                        return;
+                    }
+                    long to = Math.min(from + BLOCK_SIZE, end);
+                    for (long seed = from; seed < to; seed++) {
+                        GameEngine game = simulator.play(seed);
+                        block.accept(game);
+                        if (sink != null) {
+                            append(seed, game);
+                        }
+                    }
+                    flushBlock(to - from);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                nextSeed.set(end); // Stop the other workers too
+            }
+        }
+
+        /**
+         * Adds a game's result to the block's records.
+         */
+        private void append(long seed, GameEngine game) {
+            int outcome = outcomeOf(game);
+            if (csv) {
+                lines.append(seed).append(',').append(game.getScore()).append(',').append(game.getLength())
+                        .append(',').append(game.getTicks()).append(',').append(OUTCOMES[outcome]).append('\n');
+            } else {
+                records.putLong(seed).putInt(game.getScore()).putInt(game.getLength())
+                        .putLong(game.getTicks()).put((byte) outcome);
+            }
+        }
+
+        /**
+         * Writes the block's records and merges its summary into the total.
+         */
+        private void flushBlock(long played) throws IOException {
+            if (sink != null) {
+                synchronized (sink) {
+                    if (csv) {
+                        int length = lines.length();
+                        if (bytes.length < length) {
+                            bytes = new byte[length * 2];
+                        }
+                        for (int i = 0; i < length; i++) {
+                            bytes[i] = (byte) lines.charAt(i); // Digits, commas and outcome names, all ASCII
+                        }
+                        sink.write(bytes, 0, length);
+                    } else {
+                        sink.write(records.array(), 0, records.position());
+                    }
+                }
+                lines.setLength(0);
+                records.clear();
+            }
+            synchronized (total) {
+                total.combine(block);
+            }
+            block.clear();
+            done.addAndGet(played);
+        }
+    }
+
+    /**
+     * @param game a finished or stopped game
+     * @return WON, WALL, SELF or UNFINISHED
+     */
+    public static int outcomeOf(GameEngine game) {
+        if (game.isWon()) {
+            return WON;
+        }
+        if (game.isRunning()) {
+            return UNFINISHED;
+        }
+        return game.getSnake().isHitWall() ? WALL : SELF;
+    }
+
+    /**
+     * Creates the bots of a tournament by name.
+     *
+     * @param name greedy, pathfinding or search
+     * @param seed the seed of the search bot
+     * @param iterations the search bot's iterations per move
+     * @return a supplier of fresh bots
+     */
+    static Supplier<Bot> bots(String name, long seed, int iterations) {
+        switch (name) {
+            case "greedy":
+                return GreedyBot::new;
+            case "pathfinding":
+                return PathfindingBot::new;
+            case "search":
+                // One search thread per game, the tournament already keeps every core busy
+                return () -> new SearchBot(seed, 1, 0, iterations);
+            default:
+                throw new IllegalArgumentException("Unknown bot " + name + ", expected greedy, pathfinding or search");
+        }
+    }
+
+    /**
+     * Runs a tournament from the command line: Tournament BOT GAMES [FILE].
+     * Options are system properties: hungernagini.columns and
+     * hungernagini.rows for the board, hungernagini.firstSeed,
+     * hungernagini.maxTicks, hungernagini.threads,
+     * hungernagini.progressSeconds and hungernagini.searchIterations.
+     *
+     * @param args the bot, the number of games and optionally the result file
+     * @throws Exception if the tournament could not run
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: Tournament greedy|pathfinding|search GAMES [RESULTS.csv|RESULTS.bin]");
+            System.exit(2);
+        }
+        int columns = Integer.getInteger("hungernagini.columns", Main.SCREEN_WIDTH / Map.UNIT_SIZE);
+        int rows = Integer.getInteger("hungernagini.rows", Main.SCREEN_HEIGHT / Map.UNIT_SIZE);
+        long firstSeed = Long.getLong("hungernagini.firstSeed", 0);
+        long maxTicks = Long.getLong("hungernagini.maxTicks", 100L * columns * rows);
+        int threads = Integer.getInteger("hungernagini.threads", Runtime.getRuntime().availableProcessors());
+        long progressMillis = 1000L * Integer.getInteger("hungernagini.progressSeconds", 10);
+        int iterations = Integer.getInteger("hungernagini.searchIterations", 200);
+        long games = Long.parseLong(args[1]);
+
+        BatchSimulator simulator = new BatchSimulator(columns, rows, maxTicks, bots(args[0], firstSeed, iterations));
+        OutputStream sink = args.length > 2 ? new BufferedOutputStream(Files.newOutputStream(Paths.get(args[2])), STREAM_BUFFER) : null;
+        boolean csv = args.length > 2 && args[2].toLowerCase(Locale.ROOT).endsWith(".csv");
+        long start = System.nanoTime();
+        try {
+            GameStats stats = new Tournament(simulator, firstSeed, games, threads, sink, csv).run(progressMillis);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(stats);
+            System.out.printf(Locale.ROOT, "%d games on a %dx%d board in %.1f s, %.0f games/s%n",
+                    stats.getGames(), columns, rows, seconds, stats.getGames() / seconds);
+        } finally {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * The VectorEnv class runs a batch of "Hunger Nagini" games for training agents.
+ * Every game advances with one call, state is kept in flat primitive arrays and
+ * nothing is allocated after construction.
+ */
+package hungernagini;
+
+import java.util.Arrays;
+
+/**
+ * VectorEnv is a gym-style vectorised environment over N games with the
+ * rules of GameEngine. State is stored structure-of-arrays: per-game values
+ * are parallel arrays indexed by game, the bodies are ring buffers packed
+ * into one int array with a slot of columns * rows cells per game, and the
+ * occupancy bitsets are packed into one long array.
+ * <p>
+ * Actions are 0 to 3 for 'U', 'D', 'L' and 'R'; a reversal is ignored like
+ * in Snake.turn(). The reward of a step is 1 for an apple, -1 for a crash
+ * and 0 otherwise. A game is done when the snake crashes, fills the board
+ * or reaches the tick limit; the next step() resets it with a new seed
+ * drawn from its random state instead of moving it, so the final
+ * observation can still be read.
+ * <p>
+ * Apples are placed with a per-game SplitMix64 state like GameRandom, but
+ * without a FreeCellIndex, so a seed does not give the same apples as a
+ * GameEngine with that seed.
+ */
+public class VectorEnv {
+
+    public static final byte EMPTY = 0; // Observation value of an empty cell
+    public static final byte BODY = 1;  // Observation value of a body segment
+    public static final byte HEAD = 2;  // Observation value of the head
+    public static final byte APPLE = 3; // Observation value of the apple
+
+    // Most cells all the boards can have together: the bodies share one int array
+    public static final int MAX_CELLS = OccupancyGrid.MAX_CELLS;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L; // SplitMix64 increment, as in GameRandom
+    private static final int RANDOM_PICKS = 16; // Random tries before scanning for a free cell
+    private static final int[] DX = {0, 0, -1, 1}; // Column offset of each action
+    private static final int[] DY = {-1, 1, 0, 0}; // Row offset of each action
+
+    private final int games;       // Number of games
+    private final int columns;     // Board width in cells
+    private final int rows;        // Board height in cells
+    private final int cells;       // Cells per board, also the body slot size
+    private final int words;       // Longs per occupancy bitset
+    private final long maxTicks;   // Ticks after which a game is done
+
+    // Per-game state, indexed by game
+    private final int[] bodyHead;    // Ring slot of the head within the game's body slot
+    private final int[] length;      // Number of segments
+    private final int[] growth;      // Moves the tail will stay in place
+    private final int[] action;      // Current direction, an action number
+    private final int[] apple;       // Cell of the apple, -1 on a full board
+    private final int[] score;       // Apples eaten
+    private final long[] ticks;      // Ticks played
+    private final long[] rngState;   // SplitMix64 state
+    private final boolean[] done;    // Set when the game ended in the last step
+
+    // Packed per-game arrays
+    private final int[] bodies;      // games * cells ring buffers of packed cell indices
+    private final long[] occupancy;  // games * words bitsets of the cells the snake covers
+
+    /**
+     * Allocates the state of a batch of games. Call reset() before step().
+     *
+     * @param games the number of games
+     * @param columns the board width in cells
+     * @param rows the board height in cells
+     * @param maxTicks the tick limit of a game
+     * @throws IllegalArgumentException if a count is not positive or the boards have more than MAX_CELLS cells
+     */
+    public VectorEnv(int games, int columns, int rows, long maxTicks) {
+        long boardCells = (long) columns * rows;
+        if (games <= 0 || columns <= 0 || rows <= 0 || boardCells > MAX_CELLS || games * boardCells > MAX_CELLS) {
+            throw new IllegalArgumentException("Cannot make " + games + " boards of " + columns + " by " + rows + " cells");
+        }
+        this.games = games;
+        this.columns = columns;
+        this.rows = rows;
+        this.cells = columns * rows;
+        this.words = (cells + 63) >>> 6;
+        this.maxTicks = maxTicks;
+        bodyHead = new int[games];
+        length = new int[games];
+        growth = new int[games];
+        action = new int[games];
+        apple = new int[games];
+        score = new int[games];
+        ticks = new long[games];
+        rngState = new long[games];
+        done = new boolean[games];
+        bodies = new int[games * cells];
+        occupancy = new long[games * words];
+    }
+
+    /**
+     * Starts every game, game i with the seed seed + i.
+     *
+     * @param seed the seed of game 0
+     */
+    public void reset(long seed) {
+        for (int g = 0; g < games; g++) {
+            reset(g, seed + g);
+        }
+    }
+
+    /**
+     * Starts one game: the snake is one segment in the top-left corner
+     * heading right, as in Snake, and the apple is on a random free cell.
+     *
+     * @param g the game
+     * @param seed its seed
+     */
+    public void reset(int g, long seed) {
+        Arrays.fill(occupancy, g * words, (g + 1) * words, 0L);
+        rngState[g] = seed;
+        bodyHead[g] = 0;
+        bodies[g * cells] = 0;
+        length[g] = 1;
+        occupy(g, 0);
+        growth[g] = 0;
+        action[g] = 3; // 'R'
+        score[g] = 0;
+        ticks[g] = 0;
+        done[g] = false;
+        apple[g] = randomFreeCell(g);
+    }
+
+    /**
+     * Advances every game by one tick.
+     *
+     * @param actions the action of each game, 0 to 3
+     * @param rewards receives the reward of each game
+     * @param dones receives true for each game that ended in this step
+     */
+    public void step(int[] actions, float[] rewards, boolean[] dones) {
+        for (int g = 0; g < games; g++) {
+            rewards[g] = 0;
+            if (done[g]) {
+                reset(g, nextLong(g)); // Automatic reset, the last observation has been read
+                dones[g] = false;
+                continue;
+            }
+            int a = actions[g];
+            if ((a ^ 1) != action[g]) {
+                action[g] = a; // 0/1 and 2/3 are opposite pairs, so a ^ 1 is the reversal
+            }
+            ticks[g]++;
+            if (!move(g)) {
+                rewards[g] = -1;
+                done[g] = true;
+            } else if (bodies[g * cells + bodyHead[g]] == apple[g]) {
+                rewards[g] = 1;
+                score[g]++;
+                growth[g]++;
+                apple[g] = randomFreeCell(g);
+                done[g] = apple[g] < 0; // The snake covers the board
+            }
+            if (ticks[g] >= maxTicks) {
+                done[g] = true;
+            }
+            dones[g] = done[g];
+        }
+    }
+
+    /**
+     * Moves a snake by one cell, following the order of Snake.move().
+     *
+     * @return false if the snake crashed
+     */
+    private boolean move(int g) {
+        int base = g * cells;
+        int head = bodies[base + bodyHead[g]];
+        int x = head % columns + DX[action[g]];
+        int y = head / columns + DY[action[g]];
+        if (x < 0 || x >= columns || y < 0 || y >= rows) {
+            return false; // Off the board
+        }
+        if (growth[g] > 0) {
+            growth[g]--;
+        } else {
+            int tailSlot = bodyHead[g] + length[g] - 1;
+            vacate(g, bodies[base + (tailSlot >= cells ? tailSlot - cells : tailSlot)]);
+            length[g]--;
+        }
+        int cell = y * columns + x;
+        if (isOccupied(g, cell)) {
+            return false; // Into the body
+        }
+        int slot = bodyHead[g] == 0 ? cells - 1 : bodyHead[g] - 1;
+        bodyHead[g] = slot;
+        bodies[base + slot] = cell;
+        length[g]++;
+        occupy(g, cell);
+        return true;
+    }
+
+    /**
+     * Writes the board of every game into a buffer, one byte per cell with
+     * the values EMPTY, BODY, HEAD and APPLE, game after game.
+     *
+     * @param out the buffer, with room for games * columns * rows bytes
+     */
+    public void observe(byte[] out) {
+        for (int g = 0; g < games; g++) {
+            int base = g * cells;
+            int wordBase = g * words;
+            // Expand the bitset: whole words of 64 cells at a time
+            for (int w = 0; w < words; w++) {
+                long bits = occupancy[wordBase + w];
+                int first = w << 6;
+                int last = Math.min(first + 64, cells);
+                for (int cell = first; cell < last; cell++) {
+                    out[base + cell] = (byte) (bits >>> cell & 1); // BODY is 1
+                }
+            }
+            out[base + bodies[base + bodyHead[g]]] = HEAD;
+            if (apple[g] >= 0) {
+                out[base + apple[g]] = APPLE;
+            }
+        }
+    }
+
+    /**
+     * Picks a random cell the snake does not cover.
+     *
+     * @return the cell, or -1 if the board is full
+     */
+    private int randomFreeCell(int g) {
+        if (length[g] == cells) {
+            return -1;
+        }
+        for (int i = 0; i < RANDOM_PICKS; i++) {
+            int cell = nextInt(g, cells);
+            if (!isOccupied(g, cell)) {
+                return cell;
+            }
+        }
+        // Scan from a random cell, 64 cells at a time
+        int from = nextInt(g, cells);
+        int base = g * words;
+        int word = from >>> 6;
+        long free = ~occupancy[base + word] & (-1L << from);
+        for (int i = 0; i <= words; i++) {
+            if (free != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(free);
+                if (cell < cells) {
+                    return cell;
+                }
+            }
+            word = word + 1 == words ? 0 : word + 1;
+            free = ~occupancy[base + word];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the next SplitMix64 output of a game
+     */
+    private long nextLong(int g) {
+        long z = (rngState[g] += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return a random int from 0 to bound - 1, by multiplying the top 32 bits
+     */
+    private int nextInt(int g, int bound) {
+        return (int) (((nextLong(g) >>> 32) * bound) >>> 32);
+    }
+
+    private boolean isOccupied(int g, int cell) {
+        return (occupancy[g * words + (cell >>> 6)] & (1L << cell)) != 0;
+    }
+
+    private void occupy(int g, int cell) {
+        occupancy[g * words + (cell >>> 6)] |= 1L << cell;
+    }
+
+    private void vacate(int g, int cell) {
+        occupancy[g * words + (cell >>> 6)] &= ~(1L << cell);
+    }
+
+    /**
+     * @return the number of games
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * @return the number of bytes observe() writes
+     */
+    public int getObservationSize() {
+        return games * cells;
+    }
+
+    /**
+     * @param g a game
+     * @return the packed cell index of the snake's head
+     */
+    public int getHead(int g) {
+        return bodies[g * cells + bodyHead[g]];
+    }
+
+    /**
+     * @param g a game
+     * @return the number of segments of the snake
+     */
+    public int getLength(int g) {
+        return length[g];
+    }
+
+    /**
+     * @param g a game
+     * @return the cell of the apple, or -1 on a full board
+     */
+    public int getApple(int g) {
+        return apple[g];
+    }
+
+    /**
+     * @param g a game
+     * @return the number of apples eaten in the current game
+     */
+    public int getScore(int g) {
+        return score[g];
+    }
+
+    /**
+     * @param g a game
+     * @return the ticks played in the current game
+     */
+    public long getTicks(int g) {
+        return ticks[g];
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The BroadcasterTest class checks that spectators of a "Hunger Nagini" broadcast
+ * keep an exact copy of the game, however far behind they fall.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * BroadcasterTest plays games with a bot, publishes every step, and polls
+ * subscribers at uneven intervals. Some of them are polled so rarely that
+ * the ring laps them and they have to catch up from a keyframe. A copy is
+ * compared with the game whenever it has reached the same tick, except on
+ * the crash tick, which a STEP does not describe.
+ */
+public class BroadcasterTest {
+
+    /**
+     * Three hundred subscribers over fifteen thousand ticks. The ring
+     * holds about six thousand ticks of steps, so the subscribers polled
+     * every seven thousand ticks are lapped and catch up from a keyframe.
+     */
+    @Test
+    public void manySubscribersKeepUp() {
+        Bot bot = new GreedyBot();
+        GameEngine engine = new GameEngine(32, 24, 1);
+        Broadcaster broadcast = new Broadcaster(engine, 0);
+        Broadcaster.Subscriber[] subscribers = new Broadcaster.Subscriber[300];
+        int[] periods = new int[subscribers.length];
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i] = broadcast.subscribe();
+            periods[i] = i % 100 == 0 ? 7_000 + i : 1 + i % 250; // One in a hundred gets lapped
+        }
+
+        long seed = 1;
+        long compared = 0;
+        for (int tick = 0; tick < 15_000; tick++) {
+            if (engine.isRunning()) {
+                engine.step(bot.nextDirection(engine));
+                broadcast.publish();
+            } else {
+                engine = new GameEngine(32, 24, ++seed);
+                broadcast.restart(engine);
+            }
+            for (int i = 0; i < subscribers.length; i++) {
+                if ((tick + i) % periods[i] == 0) {
+                    subscribers[i].poll();
+                    compared += compare(engine, subscribers[i], false);
+                }
+            }
+        }
+        assertTrue("Too few copies were in step", compared > 100_000);
+        for (int i = 0; i < subscribers.length; i += 100) {
+            assertTrue("Subscriber " + i + " was not lapped", subscribers[i].getResyncs() > 1);
+        }
+
+        // A keyframe asked for by a lapped subscriber is written with the next step
+        engine = new GameEngine(32, 24, ++seed);
+        broadcast.restart(engine);
+        engine.step(bot.nextDirection(engine));
+        broadcast.publish();
+        engine.step(bot.nextDirection(engine));
+        broadcast.publish();
+        for (Broadcaster.Subscriber subscriber : subscribers) {
+            subscriber.poll();
+            subscriber.poll();
+            assertTrue(subscriber.isInStep());
+            assertEquals(1, compare(engine, subscriber, true));
+        }
+    }
+
+    /**
+     * Keyframes of a snake filling most of the board, against a ring barely
+     * larger than two of them, read by subscribers that are often lapped.
+     */
+    @Test
+    public void longSnakeKeyframesAreNotTorn() {
+        Bot bot = new PathfindingBot();
+        GameEngine engine = new GameEngine(64, 64, 7);
+        Broadcaster broadcast = new Broadcaster(engine, 0);
+        Broadcaster.Subscriber[] subscribers = new Broadcaster.Subscriber[64];
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i] = broadcast.subscribe();
+        }
+
+        long seed = 7;
+        int longest = 0;
+        for (int tick = 0; tick < 400_000; tick++) {
+            if (engine.isRunning()) {
+                engine.step(bot.nextDirection(engine));
+                broadcast.publish();
+                longest = Math.max(longest, engine.getLength());
+            } else {
+                engine = new GameEngine(64, 64, ++seed);
+                broadcast.restart(engine);
+            }
+            for (int i = 0; i < subscribers.length; i++) {
+                if ((tick + i * 97) % (1_000 + 613 * i) == 0) {
+                    subscribers[i].poll();
+                    compare(engine, subscribers[i], true);
+                }
+            }
+        }
+        assertTrue("The snake never got long, longest " + longest, longest > 500);
+    }
+
+    /**
+     * Readers on their own threads against a publisher that does not wait
+     * for them.
+     */
+    @Test
+    public void concurrentReadersEndInStep() throws InterruptedException {
+        Bot bot = new GreedyBot();
+        GameEngine engine = new GameEngine(32, 24, 3);
+        Broadcaster broadcast = new Broadcaster(engine, 0);
+        Thread[] readers = new Thread[4];
+        Broadcaster.Subscriber[] subscribers = new Broadcaster.Subscriber[readers.length];
+        long[] polls = new long[readers.length];
+        boolean[] stop = new boolean[1];
+        for (int i = 0; i < readers.length; i++) {
+            Broadcaster.Subscriber subscriber = broadcast.subscribe();
+            subscribers[i] = subscriber;
+            int index = i;
+            readers[i] = new Thread(() -> {
+                while (!isStopped(stop)) {
+                    subscriber.poll(); // Throws if a torn message is decoded
+                    polls[index]++;
+                    if (index > 0) {
+                        Thread.yield(); // Fall behind now and then
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        long seed = 3;
+        for (int tick = 0; tick < 300_000; tick++) {
+            if (engine.isRunning()) {
+                engine.step(bot.nextDirection(engine));
+                broadcast.publish();
+            } else {
+                engine = new GameEngine(32, 24, ++seed);
+                broadcast.restart(engine);
+            }
+        }
+        synchronized (stop) {
+            stop[0] = true;
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        engine = new GameEngine(32, 24, ++seed);
+        broadcast.restart(engine);
+        engine.step(bot.nextDirection(engine));
+        broadcast.publish();
+        engine.step(bot.nextDirection(engine));
+        broadcast.publish();
+        for (int i = 0; i < readers.length; i++) {
+            subscribers[i].poll();
+            subscribers[i].poll();
+            assertTrue(polls[i] > 0);
+            assertTrue(subscribers[i].isInStep());
+            assertEquals(1, compare(engine, subscribers[i], true));
+        }
+    }
+
+    private static boolean isStopped(boolean[] stop) {
+        synchronized (stop) {
+            return stop[0];
+        }
+    }
+
+    /**
+     * Compares a subscriber's copy with the game if it is in step and has
+     * reached the same tick. Only the ends of the body are compared unless
+     * the whole body is asked for, which keeps the many comparisons cheap.
+     *
+     * @return 1 if the copy was compared, 0 if it is behind or the game has just ended
+     */
+    private static int compare(GameEngine engine, Broadcaster.Subscriber subscriber, boolean wholeBody) {
+        GameEngine copy = subscriber.getGame();
+        if (!subscriber.isInStep() || copy.getTicks() != engine.getTicks() || !engine.isRunning()) {
+            return 0;
+        }
+        assertEquals(engine.getTicks(), copy.getTicks());
+        assertEquals(engine.getScore(), copy.getScore());
+        assertEquals(engine.getApple().getCell(), copy.getApple().getCell());
+        SnakeBody body = engine.getSnake().body;
+        SnakeBody copied = copy.getSnake().body;
+        assertEquals(body.size(), copied.size());
+        assertEquals(body.headCell(), copied.headCell());
+        assertEquals(body.tailCell(), copied.tailCell());
+        for (int i = 0; wholeBody && i < body.size(); i++) {
+            assertEquals(body.cellAt(i), copied.cellAt(i));
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * The FreeCellIndexTest class checks that the "Hunger Nagini" free-cell index finds
+ * the free cell of a given rank.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * FreeCellIndexTest fills and empties a board at random and compares the
+ * index with a count of the free cells after every change.
+ */
+public class FreeCellIndexTest {
+
+    /**
+     * Picking the free cell of each rank agrees with counting the free
+     * cells one by one, with the board filling up.
+     */
+    @Test
+    public void selectFindsTheFreeCellOfEachRank() {
+        OccupancyGrid grid = new OccupancyGrid(37, 29); // Not a multiple of 64 cells
+        FreeCellIndex free = grid.getFreeCells();
+        GameRandom random = new GameRandom(9);
+        int cells = 37 * 29;
+        while (!free.isEmpty()) {
+            int rank = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                if (!grid.isOccupied(cell)) {
+                    assertEquals(cell, free.select(rank++));
+                }
+            }
+            assertEquals(free.size(), rank);
+            grid.occupy(free.random(random));
+            if (random.nextInt(4) == 0) {
+                grid.vacate(random.nextInt(cells));
+            }
+        }
+        assertEquals(-1, free.random(random));
+    }
+}
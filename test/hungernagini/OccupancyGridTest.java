@@ -0,0 +1,77 @@
+/*
+ * The OccupancyGridTest class checks how the "Hunger Nagini" board picks free cells
+ * and which board sizes it accepts.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * OccupancyGridTest fills a board too large for a FreeCellIndex until the
+ * random tries always miss, so every pick comes from the counting fallback,
+ * and checks that the free cells left come up equally often.
+ */
+public class OccupancyGridTest {
+
+    /**
+     * Free cells are picked equally often however unevenly they are spread.
+     */
+    @Test
+    public void hugeBoardPicksFreeCellsUniformly() {
+        OccupancyGrid grid = new OccupancyGrid(2049, 2048);
+        assertTrue(grid.getFreeCells() == null);
+        int cells = grid.getCellCount();
+        int[] free = {0, 1, 64, 100_000, 100_001, 3_000_000, cells - 2, cells - 1}; // Clustered and far apart
+        for (int cell = 0; cell < cells; cell++) {
+            grid.occupy(cell);
+        }
+        for (int cell : free) {
+            grid.vacate(cell);
+        }
+
+        GameRandom random = new GameRandom(4);
+        int picks = 8000;
+        int[] counts = new int[free.length];
+        for (int i = 0; i < picks; i++) {
+            int cell = grid.randomFreeCell(random);
+            int k = 0;
+            while (free[k] != cell) {
+                k++; // Fails with an index out of bounds on a taken cell
+            }
+            counts[k]++;
+        }
+        int expected = picks / free.length;
+        for (int count : counts) {
+            assertTrue("Picked " + count + " times, expected about " + expected, Math.abs(count - expected) < expected / 5);
+        }
+
+        for (int cell : free) {
+            grid.occupy(cell);
+        }
+        assertEquals(-1, grid.randomFreeCell(random));
+    }
+
+    /**
+     * A board whose cells cannot all be numbered with an int is refused.
+     */
+    @Test
+    public void boardsTooLargeToNumberAreRejected() {
+        assertRejected(65_536, 65_536);
+        assertRejected(Integer.MAX_VALUE, 2);
+        assertRejected(0, 10);
+        assertRejected(10, -1);
+        assertEquals(2, new OccupancyGrid(1, 2).getCellCount());
+    }
+
+    private static void assertRejected(int columns, int rows) {
+        try {
+            new OccupancyGrid(columns, rows);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError(columns + " by " + rows + " was accepted");
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The PathfindingBotTest class checks the moves chosen by the "Hunger Nagini"
+ * path-finding bot.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * PathfindingBotTest plays the bot on single games and on snakes sharing a
+ * grid, as the arena autopilot does, and checks that it never steers into a
+ * cell that is taken while a free one is next to the head.
+ */
+public class PathfindingBotTest {
+
+    /**
+     * A bot shared by two snakes of different lengths treats the longer
+     * snake's body as a wall when it plans for the shorter one, as a fresh
+     * bot does.
+     */
+    @Test
+    public void sharedBotKeepsOtherSnakesAsWalls() {
+        OccupancyGrid grid = new OccupancyGrid(12, 6);
+        Snake longer = new Snake(grid, grid.cellOf(0, 1), 'R');
+        longer.feed(9, 0);
+        for (int i = 0; i < 9; i++) {
+            longer.move(); // Ten segments along row 1
+        }
+        Snake shorter = new Snake(grid, grid.cellOf(2, 2), 'U');
+        int target = grid.cellOf(2, 0); // Straight up, through the longer snake
+
+        char fresh = new PathfindingBot().nextDirection(shorter, target, new PathfindingBot.Route());
+
+        PathfindingBot shared = new PathfindingBot();
+        shared.nextDirection(longer, grid.cellOf(11, 5), new PathfindingBot.Route());
+        char after = shared.nextDirection(shorter, target, new PathfindingBot.Route());
+
+        assertEquals('R', fresh);
+        assertEquals(fresh, after);
+    }
+
+    /**
+     * Over whole games the bot only moves into a taken cell or off the board
+     * when every other move does too.
+     */
+    @Test
+    public void neverCrashesWhileASafeMoveExists() {
+        char[] directions = {'U', 'D', 'L', 'R'};
+        for (long seed = 1; seed <= 30; seed++) {
+            GameEngine game = new GameEngine(14, 10, seed);
+            Bot bot = new PathfindingBot();
+            while (game.isRunning() && game.getTicks() < 20000) { // Tail chasing can go on forever
+                Snake snake = game.getSnake();
+                char chosen = bot.nextDirection(game);
+                if (Snake.isReverse(chosen, snake.direction)) {
+                    chosen = snake.direction; // The turn would be ignored
+                }
+                if (!isSafe(snake, chosen)) {
+                    for (char d : directions) {
+                        boolean turnable = !Snake.isReverse(d, snake.direction);
+                        assertTrue("seed " + seed + " crashed past " + d, !turnable || !isSafe(snake, d));
+                    }
+                }
+                game.step(chosen);
+            }
+        }
+    }
+
+    /**
+     * @return true if moving the snake one cell in a direction keeps it alive
+     */
+    private static boolean isSafe(Snake snake, char direction) {
+        OccupancyGrid grid = snake.grid;
+        int head = snake.body.headCell();
+        int x = head % grid.getColumns() + Snake.dx(direction);
+        int y = head / grid.getColumns() + Snake.dy(direction);
+        if (!grid.inBounds(x, y)) {
+            return false;
+        }
+        int cell = grid.cellOf(x, y);
+        boolean tailLeaves = cell == snake.body.tailCell() && snake.getPendingGrowth() == 0;
+        return !grid.isOccupied(cell) || tailLeaves;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The ReplayTest class checks that a recorded "Hunger Nagini" game plays back exactly
+ * at any tick.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+/**
+ * ReplayTest records seeded bot games with ReplayWriter, keeping the
+ * directions played, then seeks the Replay to ticks in order and at random,
+ * backwards too, and compares each state with a game played from the seed
+ * to the same tick with those directions. The path-finding bot keeps the
+ * games going for thousands of ticks, across several keyframes.
+ */
+public class ReplayTest {
+
+    /**
+     * Every tick of a replay is the game as it was played.
+     */
+    @Test
+    public void seekAgreesWithPlayingTheGame() throws IOException {
+        GameRandom random = new GameRandom(17);
+        Path folder = Files.createTempDirectory("replays");
+        try {
+            for (long seed = 1; seed <= 6; seed++) {
+                Path file = folder.resolve("replay-" + seed + ".hnr");
+                Bot bot = new PathfindingBot();
+                GameEngine game = new GameEngine(20, 16, seed);
+                StringBuilder directions = new StringBuilder();
+                try (ReplayWriter writer = new ReplayWriter(file, seed, 20, 16)) {
+                    while (game.isRunning() && game.getTicks() < 5000) {
+                        char direction = bot.nextDirection(game);
+                        writer.step(game, direction);
+                        game.step(direction);
+                        directions.append(direction);
+                    }
+                }
+
+                Replay replay = new Replay(file);
+                assertEquals(seed, replay.getSeed());
+                assertEquals(game.getTicks(), replay.getLength());
+                assertTrue(replay.getKeyframeCount() > 1);
+
+                // Forward, one tick at a time
+                GameEngine played = new GameEngine(20, 16, seed);
+                for (int tick = 0; tick <= directions.length(); tick++) {
+                    assertSame(played, replay.seek(tick));
+                    if (tick < directions.length()) {
+                        played.step(directions.charAt(tick));
+                    }
+                }
+
+                // Random ticks, going back as well as forward
+                for (int i = 0; i < 40; i++) {
+                    int tick = random.nextInt(directions.length() + 1);
+                    assertSame(play(seed, directions, tick), replay.seek(tick));
+                }
+            }
+        } finally {
+            for (long seed = 1; seed <= 6; seed++) {
+                Files.deleteIfExists(folder.resolve("replay-" + seed + ".hnr"));
+            }
+            Files.delete(folder);
+        }
+    }
+
+    /**
+     * @return the game of a seed after playing the first directions
+     */
+    private static GameEngine play(long seed, CharSequence directions, int ticks) {
+        GameEngine game = new GameEngine(20, 16, seed);
+        for (int i = 0; i < ticks; i++) {
+            game.step(directions.charAt(i));
+        }
+        return game;
+    }
+
+    /**
+     * Compares the parts of two games that later ticks depend on.
+     */
+    private static void assertSame(GameEngine expected, GameEngine actual) {
+        assertEquals(expected.getTicks(), actual.getTicks());
+        assertEquals(expected.isRunning(), actual.isRunning());
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getApple().getCell(), actual.getApple().getCell());
+        assertEquals(expected.getRandom().getState(), actual.getRandom().getState());
+        Snake snake = expected.getSnake();
+        assertEquals(snake.direction, actual.getSnake().direction);
+        assertEquals(snake.getPendingGrowth(), actual.getSnake().getPendingGrowth());
+        assertEquals(snake.body.size(), actual.getSnake().body.size());
+        for (int k = 0; k < snake.body.size(); k++) {
+            assertEquals(snake.body.cellAt(k), actual.getSnake().body.cellAt(k));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The SearchStateTest class checks that moves played on a "Hunger Nagini" search state
+ * can be taken back exactly.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * SearchStateTest copies games at many points into a search state, plays
+ * random lines on it and undoes them, comparing it with copies taken with
+ * copyFrom() before and during the line. The lines mostly take safe moves,
+ * so they eat and grow for a while before they crash, and moves played
+ * after the crash are undone too.
+ */
+public class SearchStateTest {
+
+    /**
+     * Undoing a whole line gives back the state it started from.
+     */
+    @Test
+    public void undoingALineRestoresTheStart() {
+        GameRandom random = new GameRandom(11);
+        Bot bot = new GreedyBot();
+        for (long seed = 1; seed <= 20; seed++) {
+            GameEngine game = new GameEngine(12, 9, seed);
+            SearchState state = new SearchState(12, 9);
+            SearchState start = new SearchState(12, 9);
+            while (game.isRunning()) {
+                state.copyFrom(game);
+                start.copyFrom(game);
+                for (int line = 0; line < 20; line++) {
+                    int length = 1 + random.nextInt(200);
+                    for (int i = 0; i < length; i++) {
+                        state.play(move(state, random));
+                    }
+                    assertEquals(length, state.getDepth());
+                    while (state.getDepth() > 0) {
+                        state.undo();
+                    }
+                    assertSame(start, state);
+                }
+                game.step(bot.nextDirection(game));
+            }
+        }
+    }
+
+    /**
+     * Undoing part of a line gives back the state the line passed through,
+     * and playing on from there agrees with a copy taken at that point.
+     */
+    @Test
+    public void undoingPartOfALineRestoresTheMiddle() {
+        GameRandom random = new GameRandom(12);
+        for (long seed = 1; seed <= 200; seed++) {
+            GameEngine game = new GameEngine(8, 6, seed);
+            SearchState state = new SearchState(8, 6);
+            SearchState middle = new SearchState(8, 6);
+            state.copyFrom(game);
+            int[] line = new int[300];
+            int split = random.nextInt(line.length);
+            for (int i = 0; i < split; i++) {
+                line[i] = move(state, random);
+                state.play(line[i]);
+            }
+            middle.copyFrom(state);
+            for (int i = split; i < line.length; i++) {
+                line[i] = move(state, random);
+                state.play(line[i]);
+            }
+            while (state.getDepth() > split) {
+                state.undo();
+            }
+            assertSame(middle, state);
+
+            // Both play the rest of the line the same way
+            for (int i = split; i < line.length; i++) {
+                assertEquals(middle.play(line[i]), state.play(line[i]));
+            }
+            assertSame(middle, state);
+        }
+    }
+
+    /**
+     * @return a random action, safe for one tick unless none is or one time in fifty
+     */
+    private static int move(SearchState state, GameRandom random) {
+        int action = random.nextInt(4);
+        if (random.nextInt(50) == 0) {
+            return action;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (state.isSafe((action + i) & 3)) {
+                return (action + i) & 3;
+            }
+        }
+        return action;
+    }
+
+    /**
+     * Compares every part of two states but their journals.
+     */
+    private static void assertSame(SearchState expected, SearchState actual) {
+        assertEquals(expected.isAlive(), actual.isAlive());
+        assertEquals(expected.isWon(), actual.isWon());
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getApple(), actual.getApple());
+        assertEquals(expected.getDirection(), actual.getDirection());
+        assertEquals(expected.getPendingGrowth(), actual.getPendingGrowth());
+        assertEquals(expected.getRandomState(), actual.getRandomState());
+        assertEquals(expected.getLength(), actual.getLength());
+        for (int k = 0; k < expected.getLength(); k++) {
+            assertEquals(expected.getCellAt(k), actual.getCellAt(k));
+        }
+        int cells = expected.getColumns() * expected.getRows();
+        for (int cell = 0; cell < cells; cell++) {
+            assertEquals(expected.isOccupied(cell), actual.isOccupied(cell));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The SnapshotTest class checks that a "Hunger Nagini" game restored from a snapshot
+ * goes on exactly like the original.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+/**
+ * SnapshotTest saves games at many points, restores each into a fresh
+ * engine and plays both on with the same bot, comparing them every tick.
+ * The free-cell index is not in the snapshot, so this also checks that the
+ * rebuilt index places the same apples.
+ */
+public class SnapshotTest {
+
+    /**
+     * Restored games place the same apples and end the same way.
+     */
+    @Test
+    public void restoredGameContinuesLikeTheOriginal() {
+        Bot bot = new GreedyBot();
+        for (long seed = 1; seed <= 20; seed++) {
+            for (int saveAt = 0; saveAt < 2000; saveAt += 211) {
+                GameEngine original = new GameEngine(16, 12, seed);
+                while (original.isRunning() && original.getTicks() < saveAt) {
+                    original.step(bot.nextDirection(original));
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(Snapshot.size(original));
+                Snapshot.write(original, buffer);
+                buffer.flip();
+                GameEngine restored = new GameEngine(16, 12, 0);
+                Snapshot.read(restored, buffer);
+
+                while (original.isRunning()) {
+                    assertTrue(restored.isRunning());
+                    char direction = bot.nextDirection(original);
+                    original.step(direction);
+                    restored.step(direction);
+                    assertEquals(original.getApple().getCell(), restored.getApple().getCell());
+                    assertEquals(original.getScore(), restored.getScore());
+                    assertEquals(original.getLength(), restored.getLength());
+                }
+                assertEquals(original.isRunning(), restored.isRunning());
+                assertEquals(original.isWon(), restored.isWon());
+                assertEquals(original.getTicks(), restored.getTicks());
+            }
+        }
+    }
+
+    /**
+     * A snapshot holds the snake, not the board.
+     */
+    @Test
+    public void sizeFollowsTheSnake() {
+        GameEngine small = new GameEngine(16, 12, 5);
+        GameEngine large = new GameEngine(1024, 1024, 5);
+        assertEquals(Snapshot.size(small), Snapshot.size(large));
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.size(large));
+        Snapshot.write(large, buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+    }
+
+    /**
+     * Files whose board or snake cannot be played are rejected with an
+     * IOException, like files that are not snapshots.
+     */
+    @Test
+    public void damagedFilesAreRejected() throws IOException {
+        GameEngine game = new GameEngine(16, 12, 3);
+        Bot bot = new GreedyBot();
+        for (int i = 0; i < 50; i++) {
+            game.step(bot.nextDirection(game));
+        }
+        Path file = Files.createTempFile("snapshot", ".hns");
+        try {
+            Snapshot.save(game, file);
+            byte[] saved = Files.readAllBytes(file);
+            assertEquals(game.getLength(), Snapshot.load(file).getLength());
+
+            int columnsAt = 6;                    // After the magic and the version
+            int lengthAt = 18 + 45 - 4;           // After the header, the last of the fixed fields
+            int cellsAt = lengthAt + 4;
+            assertRejected(file, saved, columnsAt, 70_000, columnsAt + 4, 70_000); // Too many cells to number
+            assertRejected(file, saved, lengthAt, 0);
+            assertRejected(file, saved, lengthAt, 16 * 12 + 1);
+            assertRejected(file, saved, cellsAt, 16 * 12);
+            assertRejected(file, saved, cellsAt, -1);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Writes a snapshot with some ints replaced, given as pairs of byte
+     * offset and value, and checks that loading it fails.
+     */
+    private static void assertRejected(Path file, byte[] saved, int... changes) throws IOException {
+        ByteBuffer damaged = ByteBuffer.wrap(saved.clone());
+        for (int i = 0; i < changes.length; i += 2) {
+            damaged.putInt(changes[i], changes[i + 1]);
+        }
+        Files.write(file, damaged.array());
+        try {
+            Snapshot.load(file);
+            fail("Loaded a snapshot with " + changes[1] + " at " + changes[0]);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
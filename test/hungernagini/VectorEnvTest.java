@@ -0,0 +1,122 @@
+/*
+ * The VectorEnvTest class checks that the "Hunger Nagini" vectorised environment
+ * plays by the rules of GameEngine.
+ */
+package hungernagini;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * VectorEnvTest steps a batch of games and one GameEngine per game with
+ * the same actions. The environment places apples with its own random
+ * state, so each engine is given the environment's apple before every
+ * tick; after it, the heads, lengths, scores and crashes must agree.
+ */
+public class VectorEnvTest {
+
+    private static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'}; // The direction of each action
+
+    /**
+     * Many games, played until they crash or run out of ticks, move, grow
+     * and end like GameEngine games.
+     */
+    @Test
+    public void gamesFollowTheEngineRules() {
+        int games = 16;
+        int columns = 9;
+        int rows = 7;
+        VectorEnv env = new VectorEnv(games, columns, rows, 500);
+        env.reset(1);
+        GameEngine[] engines = new GameEngine[games];
+        for (int g = 0; g < games; g++) {
+            engines[g] = new GameEngine(columns, rows, 0);
+        }
+        int[] actions = new int[games];
+        float[] rewards = new float[games];
+        boolean[] dones = new boolean[games];
+        GameRandom random = new GameRandom(5);
+        int crashes = 0;
+        int apples = 0;
+
+        for (int tick = 0; tick < 20_000; tick++) {
+            boolean[] resetting = new boolean[games];
+            for (int g = 0; g < games; g++) {
+                resetting[g] = !engines[g].isRunning() || engines[g].getTicks() == 500;
+                engines[g].getApple().place(env.getApple(g), false);
+                actions[g] = action(engines[g], random);
+            }
+            env.step(actions, rewards, dones);
+            for (int g = 0; g < games; g++) {
+                GameEngine engine = engines[g];
+                if (resetting[g]) {
+                    engines[g] = new GameEngine(columns, rows, 0); // The environment started the game again
+                    assertEquals(1, env.getLength(g));
+                    assertEquals(engines[g].getSnake().body.headCell(), env.getHead(g));
+                    continue;
+                }
+                int score = engine.getScore();
+                boolean crashed = !engine.step(DIRECTIONS[actions[g]]) && !engine.isWon();
+                assertEquals(crashed, rewards[g] < 0);
+                if (crashed) {
+                    assertTrue(dones[g]);
+                    crashes++;
+                    continue;
+                }
+                assertEquals(engine.getScore() > score, rewards[g] > 0);
+                assertEquals(engine.getSnake().body.headCell(), env.getHead(g));
+                assertEquals(engine.getLength(), env.getLength(g));
+                assertEquals(engine.getScore(), env.getScore(g));
+                apples += engine.getScore() - score;
+            }
+        }
+        assertTrue("Too few crashes: " + crashes, crashes > 100);
+        assertTrue("Too few apples: " + apples, apples > 1000);
+    }
+
+    /**
+     * Batches whose boards together have more cells than an array can hold
+     * are rejected, not wrapped around.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void batchesTooLargeToStoreAreRejected() {
+        new VectorEnv(70_000, 256, 256, 100);
+    }
+
+    /**
+     * @return a random action, one that does not crash at once unless none
+     *         does or one time in twenty
+     */
+    private static int action(GameEngine engine, GameRandom random) {
+        int action = random.nextInt(4);
+        if (random.nextInt(20) == 0) {
+            return action;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (isSafe(engine.getSnake(), DIRECTIONS[(action + i) & 3])) {
+                return (action + i) & 3;
+            }
+        }
+        return action;
+    }
+
+    /**
+     * @return true if moving one cell in a direction keeps the snake alive
+     */
+    private static boolean isSafe(Snake snake, char direction) {
+        if (Snake.isReverse(direction, snake.direction)) {
+            return false; // Ignored, the snake goes on straight
+        }
+        OccupancyGrid grid = snake.grid;
+        int head = snake.body.headCell();
+        int x = head % grid.getColumns() + Snake.dx(direction);
+        int y = head / grid.getColumns() + Snake.dy(direction);
+        if (!grid.inBounds(x, y)) {
+            return false;
+        }
+        int cell = grid.cellOf(x, y);
+        return !grid.isOccupied(cell) || (cell == snake.body.tailCell() && snake.getPendingGrowth() == 0);
+    }
+}